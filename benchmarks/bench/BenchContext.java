@@ -0,0 +1,23 @@
+package bench;
+
+import edu.cmu.graphchi.GraphChiContext;
+import edu.cmu.graphchi.Scheduler;
+
+/**
+ * GraphChiContext for driving update functions outside of the engine.
+ */
+public class BenchContext extends GraphChiContext {
+
+	public BenchContext(Scheduler scheduler, long numVertices, long numEdges) {
+		setScheduler(scheduler);
+		setNumVertices(numVertices);
+		setNumEdges(numEdges);
+		setNumIterations(Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void setIteration(int iteration) {
+		super.setIteration(iteration);
+	}
+
+}
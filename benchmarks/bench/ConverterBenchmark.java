@@ -0,0 +1,101 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+import edu.cmu.graphchi.datablocks.IntConverter;
+
+/**
+ * Decode and encode throughput of the value converters over a block of
+ * RECORDS records, reported per record. IntConverter is the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ConverterBenchmark.RECORDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class ConverterBenchmark {
+
+	public static final int RECORDS = 1 << 16;
+
+	@Param({ "VertexInfoConverter", "EdgeValueConverter", "IntConverter" })
+	public String converter;
+
+	/** Fill one value object per thread instead of allocating. */
+	@Param({ "false", "true" })
+	public boolean reuseValues;
+
+	private BytesToValueConverter conv;
+	private byte[][] records;
+	private Object[] values;
+
+	@Setup
+	public void setUp() {
+		if (converter.equals("IntConverter")) {
+			conv = new IntConverter();
+		} else if (converter.equals("VertexInfoConverter")) {
+			conv = (BytesToValueConverter) DefaultPackage.newInstance(
+					converter, reuseValues, true);
+		} else {
+			conv = (BytesToValueConverter) DefaultPackage.newInstance(
+					converter, reuseValues);
+		}
+
+		records = new byte[RECORDS][conv.sizeOf()];
+		values = new Object[RECORDS];
+		for (int i = 0; i < RECORDS; i++) {
+			for (int j = 0; j < conv.sizeOf(); j += 4) {
+				SyntheticGraph.putInt(records[i], j, i + j);
+			}
+			// Own copies: with reuseValues getValue() returns one object
+			values[i] = ((BytesToValueConverter) DefaultPackage.newInstance(
+					conv.getClass().getName())).getValue(records[i]);
+		}
+	}
+
+	@Benchmark
+	public void getValue(Blackhole bh) {
+		for (int i = 0; i < RECORDS; i++) {
+			bh.consume(conv.getValue(records[i]));
+		}
+	}
+
+	@Benchmark
+	public void setValue() {
+		for (int i = 0; i < RECORDS; i++) {
+			conv.setValue(records[i], values[i]);
+		}
+	}
+
+	/**
+	 * What ChiVertex/DataBlockManager do for every value access: copy the
+	 * record out of the block into a fresh array, then decode it.
+	 */
+	@Benchmark
+	public void dereference(Blackhole bh) {
+		int size = conv.sizeOf();
+		for (int i = 0; i < RECORDS; i++) {
+			byte[] arr = new byte[size];
+			System.arraycopy(records[i], 0, arr, 0, size);
+			bh.consume(conv.getValue(arr));
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package bench;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * The SCC classes live in the default package, which cannot be imported from
+ * a named package (and JMH does not accept benchmarks in the default
+ * package). They are reached by name instead.
+ */
+public class DefaultPackage {
+
+	public static Object newInstance(String className, Object... args) {
+		try {
+			for (Constructor<?> c : Class.forName(className)
+					.getDeclaredConstructors()) {
+				if (c.getParameterTypes().length == args.length) {
+					try {
+						c.setAccessible(true);
+						return c.newInstance(args);
+					} catch (IllegalArgumentException e) {
+						// Another constructor with the same arity
+					}
+				}
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		throw new IllegalArgumentException("No constructor " + className
+				+ " with " + args.length + " arguments");
+	}
+
+	public static void setField(Object target, String name, Object value) {
+		try {
+			Field f = target.getClass().getDeclaredField(name);
+			f.setAccessible(true);
+			f.set(target, value);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static Object invoke(Object target, String name, Object... args) {
+		return invoke(target, method(target, name, args.length), args);
+	}
+
+	/**
+	 * A method of the class of target with this many parameters, for calling
+	 * it many times.
+	 */
+	public static Method method(Object target, String name, int arity) {
+		for (Method m : target.getClass().getDeclaredMethods()) {
+			if (m.getName().equals(name)
+					&& m.getParameterTypes().length == arity) {
+				m.setAccessible(true);
+				return m;
+			}
+		}
+		throw new IllegalArgumentException("No method " + name);
+	}
+
+	public static Object invoke(Object target, Method method, Object... args) {
+		try {
+			return method.invoke(target, args);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * An implementation of the interface whose methods do nothing.
+	 */
+	public static Object noop(String interfaceName) {
+		try {
+			Class<?> c = Class.forName(interfaceName);
+			return Proxy.newProxyInstance(c.getClassLoader(),
+					new Class<?>[] { c }, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							return null;
+						}
+					});
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,330 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import demo.ConnectedComponents;
+import demo.Pagerank;
+import demo.WeightedEdge;
+import demo.WeightedEdgeConverter;
+import demo.WeightedPagerank;
+import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+import edu.cmu.graphchi.datablocks.FloatConverter;
+import edu.cmu.graphchi.datablocks.IntConverter;
+import edu.cmu.graphchi.engine.BitsetScheduler;
+import edu.cmu.graphchi.engine.VertexInterval;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+
+/**
+ * One sweep of an update function over a synthetic graph of EDGES edges,
+ * reported per edge. The degree changes the vertex count, so per-vertex and
+ * per-edge costs can be told apart. Run with -prof gc for the allocation
+ * rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(KernelBenchmark.EDGES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("rawtypes")
+public class KernelBenchmark {
+
+	public static final int EDGES = 1 << 20;
+
+	@State(Scope.Thread)
+	public static abstract class Kernel {
+		@Param({ "2", "16", "128" })
+		public int degree;
+
+		SyntheticGraph graph;
+		BenchContext context;
+		GraphChiProgram program;
+
+		abstract SyntheticGraph createGraph(int numVertices);
+
+		abstract GraphChiProgram createProgram();
+
+		/** Iteration number passed to update(). */
+		int iteration() {
+			return 1;
+		}
+
+		@Setup(Level.Trial)
+		public void setUpTrial() {
+			int numVertices = EDGES / degree;
+			graph = createGraph(numVertices);
+			context = new BenchContext(new BitsetScheduler(numVertices),
+					numVertices, graph.getNumEdges());
+			context.setIteration(iteration());
+			program = createProgram();
+		}
+
+		@Setup(Level.Invocation)
+		public void setUpInvocation() {
+			graph.install();
+			graph.reset();
+			reset();
+		}
+
+		/** Extra per-sweep state to restore. */
+		void reset() {
+		}
+	}
+
+	/**
+	 * SCC vertex and edge records in the current layout, created through the
+	 * default-package converters. The vertex record is empty: the vertex
+	 * state is in the VertexStateStore of the job.
+	 */
+	static BytesToValueConverter sccVertexConverter() {
+		return (BytesToValueConverter) DefaultPackage
+				.newInstance("EmptyVertexConverter");
+	}
+
+	static BytesToValueConverter sccEdgeConverter() {
+		return (BytesToValueConverter) DefaultPackage.newInstance(
+				"EdgeValueConverter", true);
+	}
+
+	static Object sccStates(int numVertices) {
+		try {
+			File file = File.createTempFile("bench", ".sccstate");
+			file.deleteOnExit();
+			return DefaultPackage.newInstance("VertexStateStore", file,
+					numVertices, true);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Gives every vertex the state of a new forward pass, with minF set to
+	 * minF, or to the vertex id if minF is negative.
+	 */
+	static void resetStates(Object states, int numVertices, int minF) {
+		Method reset = DefaultPackage.method(states, "reset", 1);
+		Method setMinF = DefaultPackage.method(states, "setMinF", 2);
+		for (int id = 0; id < numVertices; id++) {
+			DefaultPackage.invoke(states, reset, id);
+			if (minF >= 0) {
+				DefaultPackage.invoke(states, setMinF, id, minF);
+			}
+		}
+	}
+
+	static Object sccJob(int numVertices, Object states) {
+		Object job = DefaultPackage.newInstance("SCCJob", "bench", 1, null,
+				null);
+		DefaultPackage.setField(job, "states", states);
+		Object results = DefaultPackage.newInstance("IntervalResults",
+				DefaultPackage.noop("ResultSink"),
+				DefaultPackage.newInstance("ComponentStats"),
+				VertexIdTranslate.identity());
+		DefaultPackage.invoke(results, "beginSubInterval", new VertexInterval(
+				0, numVertices - 1));
+		DefaultPackage.setField(job, "results", results);
+		return job;
+	}
+
+	/**
+	 * Forward coloring right after it started: every vertex holds its own
+	 * id, so each update lowers its label and pushes it to all out-edges.
+	 */
+	@State(Scope.Thread)
+	public static class SCCForwardKernel extends Kernel {
+		Object states;
+
+		@Override
+		SyntheticGraph createGraph(int numVertices) {
+			return new SyntheticGraph(numVertices, degree,
+					sccVertexConverter(), sccEdgeConverter(),
+					new SyntheticGraph.Initializer() {
+						public void vertex(int id, byte[] value) {
+							// No vertex record
+						}
+
+						public void edge(int source, int target, byte[] value) {
+							SyntheticGraph.putInt(value, 0, source);
+							SyntheticGraph.putInt(value, 4, Integer.MAX_VALUE);
+						}
+					});
+		}
+
+		@Override
+		GraphChiProgram createProgram() {
+			if (states == null) {
+				states = sccStates(graph.getNumVertices());
+			}
+			return (GraphChiProgram) DefaultPackage.newInstance("SCCForward",
+					sccJob(graph.getNumVertices(), states));
+		}
+
+		@Override
+		void reset() {
+			resetStates(states, graph.getNumVertices(), -1);
+		}
+	}
+
+	/**
+	 * Backward pass of a graph colored with leader 0: out-edges into even
+	 * vertices already carry minB, so most vertices confirm, delete their
+	 * out-edges and write their in-edges.
+	 */
+	@State(Scope.Thread)
+	public static class SCCBackwardKernel extends Kernel {
+		Object states;
+
+		@Override
+		SyntheticGraph createGraph(int numVertices) {
+			return new SyntheticGraph(numVertices, degree,
+					sccVertexConverter(), sccEdgeConverter(),
+					new SyntheticGraph.Initializer() {
+						public void vertex(int id, byte[] value) {
+							// No vertex record
+						}
+
+						public void edge(int source, int target, byte[] value) {
+							SyntheticGraph.putInt(value, 0, 0);
+							SyntheticGraph.putInt(value, 4,
+									(target % 2 == 0 ? 0 : Integer.MAX_VALUE));
+						}
+					});
+		}
+
+		@Override
+		GraphChiProgram createProgram() {
+			if (states == null) {
+				states = sccStates(graph.getNumVertices());
+			}
+			return (GraphChiProgram) DefaultPackage.newInstance("SCCBackward",
+					sccJob(graph.getNumVertices(), states));
+		}
+
+		@Override
+		void reset() {
+			// Forget the vertices confirmed by the previous sweep
+			resetStates(states, graph.getNumVertices(), 0);
+			program = createProgram();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PagerankKernel extends Kernel {
+		@Override
+		SyntheticGraph createGraph(int numVertices) {
+			final FloatConverter conv = new FloatConverter();
+			return new SyntheticGraph(numVertices, degree, conv, conv,
+					new SyntheticGraph.Initializer() {
+						public void vertex(int id, byte[] value) {
+							conv.setValue(value, 1.0f);
+						}
+
+						public void edge(int source, int target, byte[] value) {
+							conv.setValue(value, 1.0f / degree);
+						}
+					});
+		}
+
+		@Override
+		GraphChiProgram createProgram() {
+			return new Pagerank();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class WeightedPagerankKernel extends Kernel {
+		@Override
+		SyntheticGraph createGraph(int numVertices) {
+			final FloatConverter vertexConv = new FloatConverter();
+			final WeightedEdgeConverter edgeConv = new WeightedEdgeConverter(
+					true);
+			return new SyntheticGraph(numVertices, degree, vertexConv,
+					edgeConv, new SyntheticGraph.Initializer() {
+						public void vertex(int id, byte[] value) {
+							vertexConv.setValue(value, 1.0f);
+						}
+
+						public void edge(int source, int target, byte[] value) {
+							edgeConv.setValue(value, new WeightedEdge(
+									1.0f + (target % 7), 1.0f / degree));
+						}
+					});
+		}
+
+		@Override
+		GraphChiProgram createProgram() {
+			return new WeightedPagerank();
+		}
+	}
+
+	/**
+	 * Label propagation after initialization: labels are the vertex ids, so
+	 * most updates lower their label and write it to their edges.
+	 */
+	@State(Scope.Thread)
+	public static class ConnectedComponentsKernel extends Kernel {
+		@Override
+		SyntheticGraph createGraph(int numVertices) {
+			final IntConverter conv = new IntConverter();
+			return new SyntheticGraph(numVertices, degree, conv, conv,
+					new SyntheticGraph.Initializer() {
+						public void vertex(int id, byte[] value) {
+							conv.setValue(value, id);
+						}
+
+						public void edge(int source, int target, byte[] value) {
+							conv.setValue(value, source);
+						}
+					});
+		}
+
+		@Override
+		GraphChiProgram createProgram() {
+			return new ConnectedComponents();
+		}
+	}
+
+	@Benchmark
+	public void sccForward(SCCForwardKernel k) {
+		k.graph.sweep(k.program, k.context);
+	}
+
+	@Benchmark
+	public void sccBackward(SCCBackwardKernel k) {
+		k.graph.sweep(k.program, k.context);
+	}
+
+	@Benchmark
+	public void pagerank(PagerankKernel k) {
+		k.graph.sweep(k.program, k.context);
+	}
+
+	@Benchmark
+	public void weightedPagerank(WeightedPagerankKernel k) {
+		k.graph.sweep(k.program, k.context);
+	}
+
+	@Benchmark
+	public void connectedComponents(ConnectedComponentsKernel k) {
+		k.graph.sweep(k.program, k.context);
+	}
+
+}
@@ -0,0 +1,132 @@
+package bench;
+
+import edu.cmu.graphchi.ChiVertex;
+import edu.cmu.graphchi.GraphChiContext;
+import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+import edu.cmu.graphchi.datablocks.ChiPointer;
+import edu.cmu.graphchi.datablocks.DataBlockManager;
+import edu.cmu.graphchi.engine.auxdata.VertexDegree;
+
+/**
+ * In-memory vertices laid out the way the engine hands them to update(): a
+ * vertex data block and an edge data block in a DataBlockManager, with every
+ * vertex having degree in-edges and degree out-edges. Edge k of vertex i
+ * goes to (i + k * stride) mod n, which spreads the neighbors over the whole
+ * id range.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class SyntheticGraph {
+
+	/**
+	 * Writes the initial value of a vertex or an edge in converter format.
+	 */
+	public interface Initializer {
+		void vertex(int id, byte[] value);
+
+		void edge(int source, int target, byte[] value);
+	}
+
+	private final int numVertices;
+	private final int degree;
+	private final BytesToValueConverter vertexConverter;
+	private final BytesToValueConverter edgeConverter;
+	private final DataBlockManager blockManager = new DataBlockManager();
+	private final ChiVertex[] vertices;
+	private final byte[] vertexData;
+	private final byte[] edgeData;
+	private final byte[] initialVertexData;
+	private final byte[] initialEdgeData;
+
+	public SyntheticGraph(int numVertices, int degree,
+			BytesToValueConverter vertexConverter,
+			BytesToValueConverter edgeConverter, Initializer init) {
+		this.numVertices = numVertices;
+		this.degree = degree;
+		this.vertexConverter = vertexConverter;
+		this.edgeConverter = edgeConverter;
+		install();
+
+		int vertexSize = vertexConverter.sizeOf();
+		int edgeSize = edgeConverter.sizeOf();
+		int vertexBlock = blockManager.allocateBlock(numVertices * vertexSize);
+		int edgeBlock = blockManager.allocateBlock(numVertices * degree
+				* edgeSize);
+		vertexData = blockManager.getRawBlock(vertexBlock);
+		edgeData = blockManager.getRawBlock(edgeBlock);
+
+		vertices = new ChiVertex[numVertices];
+		for (int i = 0; i < numVertices; i++) {
+			vertices[i] = new ChiVertex(i, new VertexDegree(degree, degree));
+			vertices[i].setDataPtr(new ChiPointer(vertexBlock, i * vertexSize));
+		}
+
+		byte[] value = new byte[Math.max(vertexSize, edgeSize)];
+		int stride = Math.max(1, numVertices / (degree + 1));
+		for (int i = 0; i < numVertices; i++) {
+			init.vertex(i, value);
+			System.arraycopy(value, 0, vertexData, i * vertexSize, vertexSize);
+
+			for (int k = 1; k <= degree; k++) {
+				int target = (int) ((i + (long) k * stride) % numVertices);
+				int offset = ((i * degree) + k - 1) * edgeSize;
+				vertices[i].addOutEdge(edgeBlock, offset, target);
+				vertices[target].addInEdge(edgeBlock, offset, i);
+
+				init.edge(i, target, value);
+				System.arraycopy(value, 0, edgeData, offset, edgeSize);
+			}
+		}
+
+		initialVertexData = vertexData.clone();
+		initialEdgeData = edgeData.clone();
+	}
+
+	/**
+	 * Points the static ChiVertex state at this graph, as the engine does
+	 * before every sub-interval.
+	 */
+	public void install() {
+		ChiVertex.blockManager = blockManager;
+		ChiVertex.vertexValueConverter = vertexConverter;
+		ChiVertex.edgeValueConverter = edgeConverter;
+		ChiVertex.disableInedges = false;
+		ChiVertex.disableOutedges = false;
+	}
+
+	/**
+	 * Restores the initial vertex and edge values.
+	 */
+	public void reset() {
+		System.arraycopy(initialVertexData, 0, vertexData, 0, vertexData.length);
+		System.arraycopy(initialEdgeData, 0, edgeData, 0, edgeData.length);
+	}
+
+	/**
+	 * Calls update() on every vertex once, in id order.
+	 */
+	public void sweep(GraphChiProgram program, GraphChiContext context) {
+		for (int i = 0; i < vertices.length; i++) {
+			program.update(vertices[i], context);
+		}
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public long getNumEdges() {
+		return (long) numVertices * degree;
+	}
+
+	/**
+	 * Little-endian int, the byte order of the GraphChi converters.
+	 */
+	public static void putInt(byte[] array, int offset, int x) {
+		array[offset] = (byte) x;
+		array[offset + 1] = (byte) (x >>> 8);
+		array[offset + 2] = (byte) (x >>> 16);
+		array[offset + 3] = (byte) (x >>> 24);
+	}
+
+}
@@ -0,0 +1,46 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes (vertex-id, component-id) pairs as little-endian 4-byte ints, 8
+ * bytes per vertex.
+ */
+public class BinaryResultSink implements ResultSink {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+	public BinaryResultSink(String filename) throws IOException {
+		channel = new FileOutputStream(filename).getChannel();
+	}
+
+	@Override
+	public void write(int vertexId, int componentId) throws IOException {
+		if (buffer.remaining() < 8) {
+			flush();
+		}
+		buffer.putInt(vertexId);
+		buffer.putInt(componentId);
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+}
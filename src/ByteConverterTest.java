@@ -18,8 +18,6 @@ public class ByteConverterTest {
 		edgeValue = new EdgeValue();
 		edgeValue.minF = 100;
 		edgeValue.minB = 10000;
-		edgeValue.from = 1;
-		edgeValue.to = 2;
 	}
 
 	@Test
@@ -31,8 +29,7 @@ public class ByteConverterTest {
 		
 		assertEquals(edgeValue.minF, newValue.minF);
 		assertEquals(edgeValue.minB, newValue.minB);
-		assertEquals(edgeValue.from, newValue.from);
-		assertEquals(edgeValue.to, newValue.to);
+		assertEquals(8, converter.sizeOf());
 	}
 
 	@Test
@@ -46,6 +43,76 @@ public class ByteConverterTest {
 		assertEquals(vertexValue.confirmed, newValue.confirmed);
 		assertEquals(vertexValue.getMinB(), newValue.getMinB());
 		assertEquals(vertexValue.getMinF(), newValue.getMinF());
+		assertEquals(12, converter.sizeOf());
+	}
+
+	@Test
+	public void testEdgeValueConverterBitIdentical() {
+		edgeValue.minF = EdgeValue.DELETED;
+		edgeValue.minB = 0x01020304;
+
+		for (EdgeValueConverter converter : new EdgeValueConverter[] {
+				new EdgeValueConverter(), new EdgeValueConverter(true) }) {
+			byte[] array = new byte[converter.sizeOf()];
+			converter.setValue(array, edgeValue);
+			byte[] copy = new byte[converter.sizeOf()];
+			converter.setValue(copy, converter.getValue(array));
+
+			assertArrayEquals(array, copy);
+			assertTrue(converter.getValue(array).deleted());
+			// Same little-endian layout as IntConverter
+			assertEquals(0x04, array[4]);
+			assertEquals(0x01, array[7]);
+		}
+	}
+
+	@Test
+	public void testSCCInfoConverterWithoutColor() {
+		VertexInfoConverter converter = new VertexInfoConverter(false, false);
+		byte[] array = new byte[converter.sizeOf()];
+		converter.setValue(array, vertexValue);
+		VertexValue newValue = converter.getValue(array);
+
+		assertEquals(8, converter.sizeOf());
+		assertEquals(vertexValue.confirmed, newValue.confirmed);
+		assertEquals(vertexValue.getMinF(), newValue.getMinF());
+		assertEquals(vertexValue.getMinB(), newValue.getMinB());
+		assertEquals(vertexValue.getMinF(), newValue.color);
+	}
+
+	@Test
+	public void testSCCInfoConverterBitIdentical() {
+		vertexValue.color = Integer.MAX_VALUE;
+		vertexValue.setMinF(Integer.MAX_VALUE);
+		vertexValue.setMinB(Integer.MAX_VALUE);
+
+		for (VertexInfoConverter converter : new VertexInfoConverter[] {
+				new VertexInfoConverter(), new VertexInfoConverter(true),
+				new VertexInfoConverter(false, false) }) {
+			byte[] array = new byte[converter.sizeOf()];
+			converter.setValue(array, vertexValue);
+			byte[] copy = new byte[converter.sizeOf()];
+			converter.setValue(copy, converter.getValue(array));
+
+			assertArrayEquals(array, copy);
+		}
+	}
+
+	@Test
+	public void testReusedValues() {
+		EdgeValueConverter edgeConverter = new EdgeValueConverter(true);
+		byte[] edgeArray = new byte[edgeConverter.sizeOf()];
+		edgeConverter.setValue(edgeArray, edgeValue);
+		EdgeValue first = edgeConverter.getValue(edgeArray);
+		assertSame(first, edgeConverter.getValue(edgeArray));
+		assertEquals(edgeValue.minB, first.minB);
+
+		VertexInfoConverter vertexConverter = new VertexInfoConverter(true);
+		byte[] vertexArray = new byte[vertexConverter.sizeOf()];
+		vertexConverter.setValue(vertexArray, vertexValue);
+		VertexValue info = vertexConverter.getValue(vertexArray);
+		assertSame(info, vertexConverter.getValue(vertexArray));
+		assertEquals(vertexValue.confirmed, info.confirmed);
 	}
 
 }
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Component sizes counted while SCC confirms vertices, so the summary needs
+ * no pass over the output. Component sizes are kept in an open-addressing
+ * int-to-int map keyed by color. Trimmed vertices are always singletons and
+ * are only counted, so the map holds one entry per component of the core.
+ * Not thread-safe; SCCJob feeds it from the engine thread.
+ */
+public class ComponentStats {
+
+	private static final int EMPTY = -1;
+
+	private int[] keys;
+	private int[] sizes;
+	private int numKeys = 0;
+	private long numTrimmed = 0;
+	private long numVertices = 0;
+
+	public ComponentStats() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity
+	 *            initial number of map slots, rounded up to a power of two
+	 */
+	public ComponentStats(int capacity) {
+		int n = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		keys = new int[n];
+		sizes = new int[n];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Counts a vertex confirmed as a member of the component with this color.
+	 */
+	public void add(int color) {
+		numVertices++;
+		int mask = keys.length - 1;
+		int i = hash(color) & mask;
+		while (keys[i] != EMPTY) {
+			if (keys[i] == color) {
+				sizes[i]++;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = color;
+		sizes[i] = 1;
+		numKeys++;
+		if (numKeys * 2 > keys.length) {
+			grow();
+		}
+	}
+
+	/**
+	 * Counts a vertex that was trimmed, i.e. a component of its own.
+	 */
+	public void addTrimmed() {
+		numVertices++;
+		numTrimmed++;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldSizes = sizes;
+		keys = new int[oldKeys.length * 2];
+		sizes = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != EMPTY) {
+				int i = hash(oldKeys[j]) & mask;
+				while (keys[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				sizes[i] = oldSizes[j];
+			}
+		}
+	}
+
+	public long getNumVertices() {
+		return numVertices;
+	}
+
+	public long getNumComponents() {
+		return numTrimmed + numKeys;
+	}
+
+	public long getNumSingletons() {
+		long singletons = numTrimmed;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY && sizes[i] == 1) {
+				singletons++;
+			}
+		}
+		return singletons;
+	}
+
+	/**
+	 * Largest components, largest first, found with a k-element min-heap.
+	 * Trimmed singletons have no color here, so when the core has fewer than
+	 * k components the list is shorter.
+	 *
+	 * @return {color, size} pairs
+	 */
+	public int[][] getLargest(int k) {
+		int[] heap = new int[Math.max(k, 0)];
+		int n = 0;
+
+		for (int i = 0; i < keys.length && k > 0; i++) {
+			if (keys[i] == EMPTY) {
+				continue;
+			}
+			if (n < k) {
+				// sift up
+				int c = n++;
+				while (c > 0 && sizes[heap[(c - 1) / 2]] > sizes[i]) {
+					heap[c] = heap[(c - 1) / 2];
+					c = (c - 1) / 2;
+				}
+				heap[c] = i;
+			} else if (sizes[i] > sizes[heap[0]]) {
+				// replace the smallest and sift down
+				int c = 0;
+				while (2 * c + 1 < n) {
+					int child = 2 * c + 1;
+					if (child + 1 < n
+							&& sizes[heap[child + 1]] < sizes[heap[child]]) {
+						child++;
+					}
+					if (sizes[heap[child]] >= sizes[i]) {
+						break;
+					}
+					heap[c] = heap[child];
+					c = child;
+				}
+				heap[c] = i;
+			}
+		}
+
+		int[][] largest = new int[n][];
+		for (int j = 0; j < n; j++) {
+			largest[j] = new int[] { keys[heap[j]], sizes[heap[j]] };
+		}
+		Arrays.sort(largest, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				return (a[1] != b[1] ? (a[1] > b[1] ? -1 : 1)
+						: (a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1)));
+			}
+		});
+		return largest;
+	}
+
+	/**
+	 * Bucket b counts the components with 2^b <= size < 2^(b+1).
+	 */
+	public long[] getHistogram() {
+		long[] histogram = new long[32];
+		histogram[0] = numTrimmed;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY) {
+				histogram[31 - Integer.numberOfLeadingZeros(sizes[i])]++;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Writes the summary as one JSON object.
+	 */
+	public void writeJson(Writer out, String graph, int rounds, int topK)
+			throws IOException {
+		out.write("{\n");
+		out.write("  \"graph\": \"" + escape(graph) + "\",\n");
+		out.write("  \"rounds\": " + rounds + ",\n");
+		out.write("  \"vertices\": " + numVertices + ",\n");
+		out.write("  \"components\": " + getNumComponents() + ",\n");
+		out.write("  \"singletons\": " + getNumSingletons() + ",\n");
+
+		out.write("  \"largest\": [");
+		int[][] largest = getLargest(topK);
+		for (int j = 0; j < largest.length; j++) {
+			out.write((j > 0 ? ",\n    " : "\n    ") + "{\"color\": "
+					+ largest[j][0] + ", \"size\": " + largest[j][1] + "}");
+		}
+		out.write(largest.length > 0 ? "\n  ],\n" : "],\n");
+
+		out.write("  \"histogram\": [");
+		long[] histogram = getHistogram();
+		boolean first = true;
+		for (int b = 0; b < histogram.length; b++) {
+			if (histogram[b] == 0) {
+				continue;
+			}
+			long min = 1L << b;
+			out.write((first ? "\n    " : ",\n    ") + "{\"min\": " + min
+					+ ", \"max\": " + (2 * min - 1) + ", \"components\": "
+					+ histogram[b] + "}");
+			first = false;
+		}
+		out.write(first ? "]\n" : "\n  ]\n");
+		out.write("}\n");
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+}
@@ -0,0 +1,65 @@
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComponentStatsTest {
+	private ComponentStats stats;
+
+	@Before
+	public void setUp() throws Exception {
+		// Small capacity, so the map has to grow
+		stats = new ComponentStats(2);
+
+		// Component i has i + 1 vertices, colored with 1000 + i
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j <= i; j++) {
+				stats.add(1000 + i);
+			}
+		}
+		for (int i = 0; i < 7; i++) {
+			stats.addTrimmed();
+		}
+	}
+
+	@Test
+	public void testCounts() {
+		assertEquals(5050 + 7, stats.getNumVertices());
+		assertEquals(107, stats.getNumComponents());
+		assertEquals(8, stats.getNumSingletons());
+	}
+
+	@Test
+	public void testLargest() {
+		int[][] largest = stats.getLargest(3);
+
+		assertEquals(3, largest.length);
+		assertArrayEquals(new int[] { 1099, 100 }, largest[0]);
+		assertArrayEquals(new int[] { 1098, 99 }, largest[1]);
+		assertArrayEquals(new int[] { 1097, 98 }, largest[2]);
+		assertEquals(100, stats.getLargest(1000).length);
+	}
+
+	@Test
+	public void testHistogram() {
+		long[] histogram = stats.getHistogram();
+
+		assertEquals(8, histogram[0]); // 1
+		assertEquals(2, histogram[1]); // 2..3
+		assertEquals(4, histogram[2]); // 4..7
+		assertEquals(37, histogram[6]); // 64..100
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		StringWriter out = new StringWriter();
+		stats.writeJson(out, "g.txt", 2, 1);
+		String json = out.toString();
+
+		assertTrue(json.contains("\"components\": 107,"));
+		assertTrue(json.contains("{\"color\": 1099, \"size\": 100}\n  ],"));
+		assertTrue(json.contains("{\"min\": 64, \"max\": 127, \"components\": 37}\n  ]"));
+	}
+}
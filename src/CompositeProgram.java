@@ -0,0 +1,928 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import demo.InMemoryEngine;
+import edu.cmu.graphchi.ChiEdge;
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.ChiVertex;
+import edu.cmu.graphchi.GraphChiContext;
+import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.Scheduler;
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+import edu.cmu.graphchi.engine.VertexInterval;
+import edu.cmu.graphchi.preprocessing.EdgeProcessor;
+import edu.cmu.graphchi.preprocessing.FastSharder;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+import edu.cmu.graphchi.preprocessing.VertexProcessor;
+
+/**
+ * Runs several programs in the same engine passes, so that every interval
+ * is loaded once for all of them.
+ * <p>
+ * Each program gets a {@link Slot}: its own vertex and edge values, stored
+ * side by side in one vertex record and one edge record. A program sees an
+ * ordinary ChiVertex with its own values, a scheduler of its own and its own
+ * iteration count, and stops like it would alone: after its number of
+ * iterations, or when it schedules no new task. The engine loads the union
+ * of the scheduled vertices and updates each program only on the vertices
+ * it scheduled.
+ * <p>
+ * Programs can join and leave between engine runs. {@link #run} returns when
+ * the programs it waits for are done; the others carry on in the next run.
+ * <p>
+ * Records are rewritten whole when one program changes its part, which is
+ * safe with the deterministic execution of the engine (the default). The
+ * edge records of new shards are zero; every program initializes its edge
+ * values in its first iteration, as after sharding it alone. Edge values
+ * read from the input are not supported.
+ */
+public class CompositeProgram implements GraphChiProgram<byte[], byte[]> {
+
+	private static Logger logger = ChiLogger.getLogger("composite");
+
+	/**
+	 * Where one program's values lie in the composite records.
+	 */
+	public static class Slot<V, E> {
+		private final BytesToValueConverter<V> vertexConverter;
+		private final BytesToValueConverter<E> edgeConverter;
+		private final int vertexOffset;
+		private final int edgeOffset;
+		// Values of a slot past offset 0 are decoded and encoded here
+		private final ThreadLocal<byte[]> vertexScratch;
+		private final ThreadLocal<byte[]> edgeScratch;
+
+		Slot(BytesToValueConverter<V> vertexConverter,
+				BytesToValueConverter<E> edgeConverter, int vertexOffset,
+				int edgeOffset) {
+			this.vertexConverter = vertexConverter;
+			this.edgeConverter = edgeConverter;
+			this.vertexOffset = vertexOffset;
+			this.edgeOffset = edgeOffset;
+			this.vertexScratch = scratch(vertexConverter.sizeOf());
+			this.edgeScratch = scratch(edgeConverter.sizeOf());
+		}
+
+		private static ThreadLocal<byte[]> scratch(final int size) {
+			return new ThreadLocal<byte[]>() {
+				@Override
+				protected byte[] initialValue() {
+					return new byte[size];
+				}
+			};
+		}
+
+		public BytesToValueConverter<V> getVertexConverter() {
+			return vertexConverter;
+		}
+
+		/*
+		 * Converters read and write the first sizeOf() bytes of the array, so
+		 * the slot at offset 0 needs no copy. The others go through a buffer
+		 * of the update thread; converters do not keep the array.
+		 */
+		V getVertexValue(byte[] record) {
+			return vertexConverter.getValue(read(record, vertexOffset,
+					vertexScratch));
+		}
+
+		void setVertexValue(byte[] record, V value) {
+			if (vertexOffset == 0) {
+				vertexConverter.setValue(record, value);
+			} else {
+				byte[] data = vertexScratch.get();
+				vertexConverter.setValue(data, value);
+				System.arraycopy(data, 0, record, vertexOffset, data.length);
+			}
+		}
+
+		E getEdgeValue(byte[] record) {
+			return edgeConverter.getValue(read(record, edgeOffset, edgeScratch));
+		}
+
+		void setEdgeValue(byte[] record, E value) {
+			if (edgeOffset == 0) {
+				edgeConverter.setValue(record, value);
+			} else {
+				byte[] data = edgeScratch.get();
+				edgeConverter.setValue(data, value);
+				System.arraycopy(data, 0, record, edgeOffset, data.length);
+			}
+		}
+
+		private static byte[] read(byte[] record, int offset,
+				ThreadLocal<byte[]> scratch) {
+			if (offset == 0) {
+				return record;
+			}
+			byte[] data = scratch.get();
+			System.arraycopy(record, offset, data, 0, data.length);
+			return data;
+		}
+	}
+
+	/**
+	 * A program started on a slot.
+	 */
+	public static class Member<V, E> {
+		private final Slot<V, E> slot;
+		private final GraphChiProgram<V, E> program;
+		private final int iterations;
+		private final boolean scheduled;
+
+		private int iteration = 0;
+		private boolean running = false;
+		private boolean done = false;
+
+		// Tasks of the next updates, and those of the current sub-interval
+		private AtomicLongArray tasks = null;
+		private long[] current = null;
+		private volatile boolean newTasks = true;
+		private Scheduler engineScheduler;
+		private final Scheduler scheduler;
+
+		// The vertex and context handed to the program, one per update thread
+		private final ThreadLocal<SlotVertex<V, E>> vertices;
+		private final ThreadLocal<MemberContext> contexts;
+
+		Member(final Slot<V, E> slot, GraphChiProgram<V, E> program,
+				int iterations, boolean scheduled) {
+			this.slot = slot;
+			this.program = program;
+			this.iterations = iterations;
+			this.scheduled = scheduled;
+			this.scheduler = (scheduled ? new MemberScheduler(this)
+					: new NoScheduler());
+			this.vertices = new ThreadLocal<SlotVertex<V, E>>() {
+				@Override
+				protected SlotVertex<V, E> initialValue() {
+					return new SlotVertex<V, E>(slot);
+				}
+			};
+			this.contexts = new ThreadLocal<MemberContext>() {
+				@Override
+				protected MemberContext initialValue() {
+					return new MemberContext(null, Member.this);
+				}
+			};
+		}
+
+		public GraphChiProgram<V, E> getProgram() {
+			return program;
+		}
+
+		/**
+		 * @return number of iterations the program has run
+		 */
+		public int getIterations() {
+			return iteration;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		void init(int numVertices) {
+			if (tasks != null || !scheduled) {
+				return;
+			}
+			// Every vertex is scheduled when the program starts
+			int words = (numVertices + 63) >>> 6;
+			tasks = new AtomicLongArray(words);
+			for (int w = 0; w < numVertices >>> 6; w++) {
+				tasks.set(w, -1L);
+			}
+			if ((numVertices & 63) != 0) {
+				tasks.set(numVertices >>> 6, (1L << (numVertices & 63)) - 1);
+			}
+			current = new long[words];
+		}
+
+		boolean hasTasks() {
+			for (int w = 0; w < tasks.length(); w++) {
+				if (tasks.get(w) != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Moves the tasks of a sub-interval to the current set, like the
+		 * engine clears its scheduler bits before running the updates.
+		 */
+		void takeTasks(int first, int last) {
+			for (int w = first >>> 6; w <= last >>> 6; w++) {
+				long mask = -1L;
+				if (w == first >>> 6) {
+					mask &= -1L << (first & 63);
+				}
+				if (w == last >>> 6 && (last & 63) != 63) {
+					mask &= (1L << ((last & 63) + 1)) - 1;
+				}
+				current[w] = (current[w] & ~mask) | (clear(w, mask) & mask);
+			}
+		}
+
+		private long clear(int w, long mask) {
+			long old;
+			do {
+				old = tasks.get(w);
+			} while ((old & mask) != 0
+					&& !tasks.compareAndSet(w, old, old & ~mask));
+			return old;
+		}
+
+		boolean isCurrent(int vertexId) {
+			return !scheduled
+					|| (current[vertexId >>> 6] & (1L << (vertexId & 63))) != 0;
+		}
+
+		void addTask(int vertexId) {
+			int w = vertexId >>> 6;
+			long mask = 1L << (vertexId & 63);
+			long old;
+			do {
+				old = tasks.get(w);
+			} while ((old & mask) == 0
+					&& !tasks.compareAndSet(w, old, old | mask));
+			newTasks = true;
+		}
+
+		/**
+		 * Adds the tasks of the member to the engine scheduler.
+		 */
+		void scheduleIn(Scheduler engineScheduler) {
+			for (int w = 0; w < tasks.length(); w++) {
+				long bits = tasks.get(w);
+				while (bits != 0) {
+					engineScheduler.addTask((w << 6)
+							+ Long.numberOfTrailingZeros(bits));
+					bits &= bits - 1;
+				}
+			}
+		}
+
+		void update(ChiVertex<byte[], byte[]> vertex, GraphChiContext context) {
+			if (isCurrent(vertex.getId())) {
+				program.update(vertices.get().wrap(vertex), contexts.get()
+						.wrap(context));
+			}
+		}
+	}
+
+	/**
+	 * Scheduler of one member. Tasks also go to the engine scheduler, so
+	 * that the engine loads the vertex.
+	 */
+	private static class MemberScheduler implements Scheduler {
+		private final Member<?, ?> member;
+
+		MemberScheduler(Member<?, ?> member) {
+			this.member = member;
+		}
+
+		@Override
+		public void addTask(int vertexId) {
+			member.addTask(vertexId);
+			member.engineScheduler.addTask(vertexId);
+		}
+
+		@Override
+		public void removeTasks(int from, int to) {
+			for (int w = from >>> 6; w <= to >>> 6; w++) {
+				long mask = -1L;
+				if (w == from >>> 6) {
+					mask &= -1L << (from & 63);
+				}
+				if (w == to >>> 6 && (to & 63) != 63) {
+					mask &= (1L << ((to & 63) + 1)) - 1;
+				}
+				member.clear(w, mask);
+			}
+		}
+
+		@Override
+		public void addAllTasks() {
+			for (int w = 0; w < member.tasks.length(); w++) {
+				member.tasks.set(w, -1L);
+			}
+			member.newTasks = true;
+			member.engineScheduler.addAllTasks();
+		}
+
+		@Override
+		public boolean hasTasks() {
+			return member.newTasks;
+		}
+
+		@Override
+		public boolean isScheduled(int i) {
+			return (member.tasks.get(i >>> 6) & (1L << (i & 63))) != 0;
+		}
+
+		@Override
+		public void removeAllTasks() {
+			for (int w = 0; w < member.tasks.length(); w++) {
+				member.tasks.set(w, 0);
+			}
+			member.newTasks = false;
+		}
+
+		@Override
+		public void scheduleOutNeighbors(ChiVertex vertex) {
+			for (int i = 0; i < vertex.numOutEdges(); i++) {
+				addTask(vertex.getOutEdgeId(i));
+			}
+		}
+
+		@Override
+		public void scheduleInNeighbors(ChiVertex vertex) {
+			for (int i = 0; i < vertex.numInEdges(); i++) {
+				addTask(vertex.inEdge(i).getVertexId());
+			}
+		}
+	}
+
+	/**
+	 * Given to programs started without the scheduler, like the engine does
+	 * when its scheduler is disabled.
+	 */
+	private static class NoScheduler implements Scheduler {
+		public void addTask(int vertexId) {
+		}
+
+		public void removeTasks(int from, int to) {
+		}
+
+		public void addAllTasks() {
+		}
+
+		public boolean hasTasks() {
+			return false;
+		}
+
+		public boolean isScheduled(int i) {
+			return true;
+		}
+
+		public void removeAllTasks() {
+		}
+
+		public void scheduleOutNeighbors(ChiVertex vertex) {
+		}
+
+		public void scheduleInNeighbors(ChiVertex vertex) {
+		}
+	}
+
+	/**
+	 * The engine context as one member sees it.
+	 */
+	private static class MemberContext extends GraphChiContext {
+		private GraphChiContext context;
+		private final Member<?, ?> member;
+
+		MemberContext(GraphChiContext context, Member<?, ?> member) {
+			this.context = context;
+			this.member = member;
+		}
+
+		/**
+		 * Reuses the context for the engine context of another update on the
+		 * same thread.
+		 */
+		MemberContext wrap(GraphChiContext context) {
+			this.context = context;
+			return this;
+		}
+
+		@Override
+		public VertexInterval getCurInterval() {
+			return context.getCurInterval();
+		}
+
+		@Override
+		public int getIteration() {
+			return member.iteration;
+		}
+
+		@Override
+		public int getNumIterations() {
+			return member.iterations;
+		}
+
+		@Override
+		public Scheduler getScheduler() {
+			return member.scheduler;
+		}
+
+		@Override
+		public long getNumEdges() {
+			return context.getNumEdges();
+		}
+
+		@Override
+		public long getNumVertices() {
+			return context.getNumVertices();
+		}
+
+		@Override
+		public int getThreadId() {
+			return context.getThreadId();
+		}
+
+		@Override
+		public boolean isLastIteration() {
+			return member.iteration == member.iterations - 1;
+		}
+
+		@Override
+		public Object getThreadLocal() {
+			return context.getThreadLocal();
+		}
+
+		@Override
+		public void setThreadLocal(Object threadLocal) {
+			context.setThreadLocal(threadLocal);
+		}
+
+		@Override
+		public VertexIdTranslate getVertexIdTranslate() {
+			return context.getVertexIdTranslate();
+		}
+
+		@Override
+		public GraphChiContext clone(int threadId) {
+			return new MemberContext(context.clone(threadId), member);
+		}
+	}
+
+	/**
+	 * A vertex with the values of one slot. One is kept per update thread and
+	 * wraps the vertex being updated.
+	 */
+	private static class SlotVertex<V, E> extends ChiVertex<V, E> {
+		private ChiVertex<byte[], byte[]> vertex;
+		private final Slot<V, E> slot;
+
+		SlotVertex(Slot<V, E> slot) {
+			super(-1, null);
+			this.slot = slot;
+		}
+
+		SlotVertex<V, E> wrap(ChiVertex<byte[], byte[]> vertex) {
+			this.vertex = vertex;
+			return this;
+		}
+
+		@Override
+		public int getId() {
+			return vertex.getId();
+		}
+
+		@Override
+		public V getValue() {
+			return slot.getVertexValue(vertex.getValue());
+		}
+
+		@Override
+		public void setValue(V x) {
+			byte[] record = vertex.getValue();
+			slot.setVertexValue(record, x);
+			vertex.setValue(record);
+		}
+
+		@Override
+		public int getRandomOutNeighbor() {
+			return vertex.getRandomOutNeighbor();
+		}
+
+		@Override
+		public int getRandomNeighbor() {
+			return vertex.getRandomNeighbor();
+		}
+
+		@Override
+		public int numOutEdges() {
+			return vertex.numOutEdges();
+		}
+
+		@Override
+		public int numInEdges() {
+			return vertex.numInEdges();
+		}
+
+		@Override
+		public int numEdges() {
+			return vertex.numEdges();
+		}
+
+		@Override
+		public ChiEdge<E> inEdge(int i) {
+			return new SlotEdge<E>(vertex.inEdge(i), slot);
+		}
+
+		@Override
+		public ChiEdge<E> outEdge(int i) {
+			return new SlotEdge<E>(vertex.outEdge(i), slot);
+		}
+
+		@Override
+		public ChiEdge<E> edge(int i) {
+			return new SlotEdge<E>(vertex.edge(i), slot);
+		}
+
+		@Override
+		public int getOutEdgeId(int i) {
+			return vertex.getOutEdgeId(i);
+		}
+
+		@Override
+		public int[] getOutNeighborArray() {
+			return vertex.getOutNeighborArray();
+		}
+
+		@Override
+		public E getOutEdgeValue(int i) {
+			return slot.getEdgeValue(vertex.getOutEdgeValue(i));
+		}
+
+		@Override
+		public void addInEdge(int chunkId, int offset, int vertexId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addOutEdge(int chunkId, int offset, int vertexId) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class SlotEdge<E> implements ChiEdge<E> {
+		private final ChiEdge<byte[]> edge;
+		private final Slot<?, E> slot;
+
+		SlotEdge(ChiEdge<byte[]> edge, Slot<?, E> slot) {
+			this.edge = edge;
+			this.slot = slot;
+		}
+
+		@Override
+		public int getVertexId() {
+			return edge.getVertexId();
+		}
+
+		@Override
+		public E getValue() {
+			return slot.getEdgeValue(edge.getValue());
+		}
+
+		@Override
+		public void setValue(E x) {
+			byte[] record = edge.getValue();
+			slot.setEdgeValue(record, x);
+			edge.setValue(record);
+		}
+	}
+
+	/**
+	 * Fixed-size records; the block manager already hands out a copy.
+	 */
+	private static class RecordConverter implements
+			BytesToValueConverter<byte[]> {
+		private final int size;
+
+		RecordConverter(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public int sizeOf() {
+			return size;
+		}
+
+		@Override
+		public byte[] getValue(byte[] array) {
+			return array;
+		}
+
+		@Override
+		public void setValue(byte[] array, byte[] val) {
+			System.arraycopy(val, 0, array, 0, size);
+		}
+	}
+
+	private int vertexSize = 0;
+	private int edgeSize = 0;
+	private RecordConverter vertexConverter = null;
+	private RecordConverter edgeConverter = null;
+
+	private final List<Member<?, ?>> members = new ArrayList<Member<?, ?>>();
+	private final List<Member<?, ?>> waitFor = new ArrayList<Member<?, ?>>();
+	private boolean stopping;
+
+	/**
+	 * Adds a slot for one program's values. All slots must be added before
+	 * the converters are taken.
+	 */
+	public synchronized <V, E> Slot<V, E> addSlot(
+			BytesToValueConverter<V> vertexConverter,
+			BytesToValueConverter<E> edgeConverter) {
+		if (this.vertexConverter != null) {
+			throw new IllegalStateException("Record layout already in use");
+		}
+		Slot<V, E> slot = new Slot<V, E>(vertexConverter, edgeConverter,
+				vertexSize, edgeSize);
+		vertexSize += vertexConverter.sizeOf();
+		edgeSize += edgeConverter.sizeOf();
+		return slot;
+	}
+
+	public synchronized BytesToValueConverter<byte[]> getVertexConverter() {
+		if (vertexConverter == null) {
+			vertexConverter = new RecordConverter(vertexSize);
+			edgeConverter = new RecordConverter(edgeSize);
+		}
+		return vertexConverter;
+	}
+
+	public synchronized BytesToValueConverter<byte[]> getEdgeConverter() {
+		getVertexConverter();
+		return edgeConverter;
+	}
+
+	/**
+	 * @return a sharder writing composite records, all zero
+	 */
+	public FastSharder<byte[], byte[]> createSharder(String graphName,
+			int numShards) throws IOException {
+		final int vsize = getVertexConverter().sizeOf();
+		final int esize = getEdgeConverter().sizeOf();
+		return new FastSharder<byte[], byte[]>(graphName, numShards,
+				new VertexProcessor<byte[]>() {
+					public byte[] receiveVertexValue(int vertexId, String token) {
+						return new byte[vsize];
+					}
+				}, new EdgeProcessor<byte[]>() {
+					public byte[] receiveEdge(int from, int to, String token) {
+						return new byte[esize];
+					}
+				}, getVertexConverter(), getEdgeConverter());
+	}
+
+	/**
+	 * @return an engine over composite records, with the scheduler on; in
+	 *         memory if the graph fits (see {@link InMemoryEngine#create})
+	 */
+	public GraphChiEngine<byte[], byte[]> createEngine(String baseFilename,
+			int nShards) throws IOException {
+		return createEngine(baseFilename, nShards, InMemoryEngine
+				.defaultMemoryBudget());
+	}
+
+	/**
+	 * @param budget
+	 *            bytes the engine may keep in memory
+	 */
+	public GraphChiEngine<byte[], byte[]> createEngine(String baseFilename,
+			int nShards, long budget) throws IOException {
+		GraphChiEngine<byte[], byte[]> engine = InMemoryEngine.create(
+				baseFilename, nShards, getVertexConverter(),
+				getEdgeConverter(), budget);
+		engine.setEnableScheduler(true);
+		return engine;
+	}
+
+	/**
+	 * Starts a program on a slot. It first runs in the next engine run.
+	 *
+	 * @param iterations
+	 *            most iterations the program runs
+	 * @param scheduled
+	 *            if true, the program is updated on the vertices it schedules
+	 *            and stops when it schedules none; otherwise every vertex is
+	 *            updated in each of its iterations
+	 */
+	public synchronized <V, E> Member<V, E> start(Slot<V, E> slot,
+			GraphChiProgram<V, E> program, int iterations, boolean scheduled) {
+		Member<V, E> member = new Member<V, E>(slot, program, iterations,
+				scheduled);
+		members.add(member);
+		return member;
+	}
+
+	/**
+	 * Runs the engine until the given members are done, or all members if
+	 * none are given. The other members run alongside.
+	 */
+	public void run(GraphChiEngine<byte[], byte[]> engine,
+			Member<?, ?>... members) throws IOException {
+		synchronized (this) {
+			waitFor.clear();
+			waitFor.addAll(members.length > 0 ? Arrays.asList(members)
+					: this.members);
+			stopping = true;
+			for (Member<?, ?> member : waitFor) {
+				if (!member.done) {
+					stopping = false;
+				}
+			}
+		}
+		if (!stopping) {
+			engine.run(this, Integer.MAX_VALUE);
+		}
+	}
+
+	private synchronized void finish(Member<?, ?> member) {
+		member.done = true;
+		member.running = false;
+		member.tasks = null;
+		member.current = null;
+		members.remove(member);
+		logger.info(member.program.getClass().getSimpleName() + " done after "
+				+ member.iteration + " iterations");
+	}
+
+	@Override
+	public void update(ChiVertex<byte[], byte[]> vertex,
+			GraphChiContext context) {
+		for (Member<?, ?> member : members) {
+			if (member.running) {
+				member.update(vertex, context);
+			}
+		}
+	}
+
+	/**
+	 * Begins an iteration of the members still running, waited members
+	 * first: the engine stops once they are done. The engine scheduler is
+	 * set to the union of their tasks.
+	 */
+	@Override
+	public void beginIteration(GraphChiContext ctx) {
+		Scheduler engineScheduler = ctx.getScheduler();
+		List<Member<?, ?>> order = new ArrayList<Member<?, ?>>(waitFor);
+		for (Member<?, ?> member : members) {
+			if (!order.contains(member)) {
+				order.add(member);
+			}
+		}
+
+		boolean waiting = false;
+		for (Member<?, ?> member : order) {
+			if (member.done) {
+				continue;
+			}
+			if (!waiting && !waitFor.contains(member)) {
+				// Nothing left to wait for
+				break;
+			}
+			member.init((int) ctx.getNumVertices());
+			member.engineScheduler = engineScheduler;
+			if (member.iteration >= member.iterations) {
+				finish(member);
+				continue;
+			}
+			MemberContext context = new MemberContext(ctx, member);
+			member.program.beginIteration(context);
+			if (member.scheduled && member.iteration > 0
+					&& (!member.newTasks || !member.hasTasks())) {
+				finish(member);
+				continue;
+			}
+			member.newTasks = false;
+			member.running = true;
+			if (waitFor.contains(member)) {
+				waiting = true;
+			}
+		}
+		stopping = !waiting;
+
+		// The engine ends the run on an iteration without tasks
+		engineScheduler.removeAllTasks();
+		if (stopping) {
+			for (Member<?, ?> member : members) {
+				member.running = false;
+			}
+			return;
+		}
+		for (Member<?, ?> member : members) {
+			if (member.running) {
+				if (!member.scheduled) {
+					engineScheduler.addAllTasks();
+					break;
+				}
+				member.scheduleIn(engineScheduler);
+			}
+		}
+	}
+
+	@Override
+	public void endIteration(GraphChiContext ctx) {
+		for (Member<?, ?> member : new ArrayList<Member<?, ?>>(members)) {
+			if (member.running) {
+				member.program.endIteration(new MemberContext(ctx, member));
+				member.running = false;
+				member.iteration++;
+				if (member.iteration >= member.iterations) {
+					finish(member);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
+		for (Member<?, ?> member : members) {
+			if (member.running) {
+				member.program.beginInterval(new MemberContext(ctx, member),
+						interval);
+			}
+		}
+	}
+
+	@Override
+	public void endInterval(GraphChiContext ctx, VertexInterval interval) {
+		for (Member<?, ?> member : members) {
+			if (member.running) {
+				member.program.endInterval(new MemberContext(ctx, member),
+						interval);
+			}
+		}
+	}
+
+	@Override
+	public void beginSubInterval(GraphChiContext ctx, VertexInterval interval) {
+		for (Member<?, ?> member : members) {
+			if (member.running) {
+				if (member.scheduled) {
+					member.takeTasks(interval.getFirstVertex(),
+							interval.getLastVertex());
+				}
+				member.program.beginSubInterval(new MemberContext(ctx, member),
+						interval);
+			}
+		}
+	}
+
+	@Override
+	public void endSubInterval(GraphChiContext ctx, VertexInterval interval) {
+		for (Member<?, ?> member : members) {
+			if (member.running) {
+				member.program.endSubInterval(new MemberContext(ctx, member),
+						interval);
+			}
+		}
+	}
+
+	/**
+	 * Copies the vertex values of a slot into the vertex data file a run of
+	 * its program alone would have written, for the usual output tools.
+	 * Vertex data files are named by value size, so this overwrites the file
+	 * of any other program with values of the same size.
+	 */
+	public void writeVertexData(String baseFilename, int numVertices,
+			Slot<?, ?> slot) throws IOException {
+		int size = slot.vertexConverter.sizeOf();
+		InputStream in = new BufferedInputStream(new FileInputStream(
+				ChiFilenames.getFilenameOfVertexData(baseFilename,
+						getVertexConverter(), false)));
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					ChiFilenames.getFilenameOfVertexData(baseFilename,
+							slot.vertexConverter, false)));
+			try {
+				byte[] record = new byte[vertexSize];
+				for (int i = 0; i < numVertices; i++) {
+					int n = 0;
+					while (n < record.length) {
+						int r = in.read(record, n, record.length - n);
+						if (r < 0) {
+							throw new IOException("Vertex data of "
+									+ baseFilename + " ends at vertex " + i);
+						}
+						n += r;
+					}
+					out.write(record, slot.vertexOffset, size);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import demo.ConnectedComponents;
+import demo.Pagerank;
+import demo.ParallelSharder;
+import demo.TestFiles;
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.datablocks.FloatConverter;
+import edu.cmu.graphchi.datablocks.IntConverter;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+
+public class CompositeProgramTest {
+	private File dir;
+	private File graph;
+
+	/**
+	 * Keeps the component of each vertex.
+	 */
+	private static class MapSink implements ResultSink {
+		final Map<Integer, Integer> components = new HashMap<Integer, Integer>();
+
+		public void write(int vertexId, int componentId) {
+			assertNull(components.put(vertexId, componentId));
+		}
+
+		public void close() {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		dir = TestFiles.createTempDir("composite");
+		graph = new File(dir, "graph");
+		Writer out = new FileWriter(graph);
+		Random random = new Random(7);
+		for (int i = 0; i < 4000; i++) {
+			out.write(random.nextInt(1500) + " " + random.nextInt(1500) + "\n");
+		}
+		out.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFiles.delete(dir);
+	}
+
+	/**
+	 * Pagerank and ConnectedComponents both have 4-byte vertex values, so
+	 * they write the same vertex data file.
+	 */
+	private byte[] vertexData() throws IOException {
+		File file = new File(ChiFilenames.getFilenameOfVertexData(
+				graph.getPath(), new IntConverter(), false));
+		return TestFiles.read(file);
+	}
+
+	/**
+	 * Pagerank at offset 0 and ConnectedComponents and SCC past it give the
+	 * same values in shared passes as each run alone.
+	 */
+	@Test
+	public void testSharedPasses() throws Exception {
+		// Each program alone
+		new ParallelSharder(1).run(Pagerank.createSharder(graph.getPath(), 2),
+				graph, "edgelist");
+		GraphChiEngine<Float, Float> pagerankEngine = new GraphChiEngine<Float, Float>(
+				graph.getPath(), 2);
+		pagerankEngine.setVertexDataConverter(new FloatConverter());
+		pagerankEngine.setEdataConverter(new FloatConverter());
+		pagerankEngine.run(new Pagerank(), 5);
+		byte[] expectedRanks = vertexData();
+
+		new ParallelSharder(1).run(
+				ConnectedComponents.createSharder(graph.getPath(), 2), graph,
+				"edgelist");
+		GraphChiEngine<Integer, Integer> ccEngine = new GraphChiEngine<Integer, Integer>(
+				graph.getPath(), 2);
+		ccEngine.setVertexDataConverter(new IntConverter());
+		ccEngine.setEdataConverter(new IntConverter());
+		ccEngine.setEnableScheduler(true);
+		ConnectedComponents labelsAlone = new ConnectedComponents();
+		ccEngine.run(labelsAlone, 1000);
+		byte[] expectedLabels = vertexData();
+
+		MapSink expectedComponents = new MapSink();
+		new SCCJob(graph.getPath(), 2, "edgelist", expectedComponents).run();
+
+		// All three in the passes of the SCC job
+		CompositeProgram composite = new CompositeProgram();
+		CompositeProgram.Slot<Float, Float> ranks = composite.addSlot(
+				new FloatConverter(), new FloatConverter());
+		CompositeProgram.Slot<Integer, Integer> labels = composite.addSlot(
+				new IntConverter(), new IntConverter());
+		composite.start(ranks, new Pagerank(), 5, false);
+		CompositeProgram.Member<Integer, Integer> labelsShared = composite
+				.start(labels, new ConnectedComponents(), 1000, true);
+		MapSink components = new MapSink();
+		SCCJob job = new SCCJob(graph.getPath(), 2, "edgelist", components);
+		job.setComposite(composite);
+		job.run();
+
+		assertEquals(expectedComponents.components, components.components);
+		assertEquals(labelsAlone.getIterationCounts().size(),
+				labelsShared.getIterations());
+
+		int numVertices = ChiFilenames.numVertices(graph.getPath(), 2);
+		composite.writeVertexData(graph.getPath(), numVertices, labels);
+		assertTrue(Arrays.equals(expectedLabels, vertexData()));
+		composite.writeVertexData(graph.getPath(), numVertices, ranks);
+		assertTrue(Arrays.equals(expectedRanks, vertexData()));
+	}
+}
@@ -0,0 +1,590 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Logger;
+
+import demo.InMemoryEngine;
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+
+/**
+ * SCC by forward-backward decomposition on the adjacency of the shards held
+ * in memory. The label propagation of {@link SCCForward} and
+ * {@link SCCBackward} needs about one iteration per hop of the diameter;
+ * here each component costs one forward and one backward search.
+ * <p>
+ * Every vertex carries the label of the partition it is in, and only edges
+ * inside a partition count. A partition is first trimmed (sources and sinks
+ * are peeled off as singletons, as {@link SCCTrim} does), then searched
+ * forward and backward from a pivot. The vertices reached both ways are the
+ * component of the pivot; the forward-only, backward-only and unreached
+ * vertices form three new partitions, since no component crosses them.
+ * <p>
+ * Large partitions are decomposed one at a time, each search level spread
+ * over the threads. A small partition is decomposed with all the partitions
+ * it splits into by a single thread, many of them side by side.
+ * <p>
+ * A component is colored with its smallest vertex id, like the leader of
+ * the propagation passes, and the results go to the same {@link ResultSink},
+ * so both give the same output.
+ */
+public class FwBwSCC {
+
+	private static Logger logger = ChiLogger.getLogger("SCC");
+
+	// Labels of finished vertices
+	private static final int DONE = -1;
+	private static final int SINGLETON = -2;
+
+	/*
+	 * Each decomposition takes two new labels and finishes at least its
+	 * pivot, so labels stay below 2 * numVertices and never reach the
+	 * negative ones of finished vertices.
+	 */
+	private static final int MAX_VERTICES = Integer.MAX_VALUE / 2;
+
+	/** Frontier vertices per parallel chunk */
+	private static final int GRAIN = 1024;
+
+	/**
+	 * Memory the decomposition needs: source and target of every edge, and
+	 * the offsets, label, color and two degrees of every vertex. The number
+	 * of edges is bounded by the size of the adjacency shards, four bytes per
+	 * edge.
+	 *
+	 * @return Long.MAX_VALUE if the graph has too many edges or vertices
+	 */
+	public static long estimateMemory(String baseFilename, int nShards)
+			throws IOException {
+		long edges = 0;
+		for (int p = 0; p < nShards; p++) {
+			edges += new File(ChiFilenames.getFilenameShardsAdj(baseFilename,
+					p, nShards)).length() / 4;
+		}
+		int vertices = ChiFilenames.numVertices(baseFilename, nShards);
+		if (edges > Integer.MAX_VALUE - 8 || vertices > MAX_VERTICES) {
+			return Long.MAX_VALUE;
+		}
+		return edges * 8 + (long) vertices * 24;
+	}
+
+	/**
+	 * Growable list of vertex ids.
+	 */
+	private static class IntList {
+		int[] array;
+		int size = 0;
+
+		IntList() {
+			this(16);
+		}
+
+		IntList(int capacity) {
+			array = new int[Math.max(capacity, 1)];
+		}
+
+		void add(int v) {
+			if (size == array.length) {
+				int[] grown = new int[array.length * 2];
+				System.arraycopy(array, 0, grown, 0, size);
+				array = grown;
+			}
+			array[size++] = v;
+		}
+
+		void addAll(IntList other) {
+			if (size + other.size > array.length) {
+				int[] grown = new int[Math.max(array.length * 2, size
+						+ other.size)];
+				System.arraycopy(array, 0, grown, 0, size);
+				array = grown;
+			}
+			System.arraycopy(other.array, 0, array, size, other.size);
+			size += other.size;
+		}
+	}
+
+	/**
+	 * Work done for one vertex of a frontier; vertices it claims for the
+	 * next step are added to next.
+	 */
+	private interface Step {
+		void visit(int v, IntList next);
+	}
+
+	private final String baseFilename;
+	private final int nShards;
+	private int numVertices;
+	private int numEdges;
+
+	private int[] outOffsets;
+	private int[] outTargets;
+	private int[] inOffsets;
+	private int[] inSources;
+
+	// Partition label of each vertex, DONE or SINGLETON when finished
+	private AtomicIntegerArray labels;
+	// Live in- and out-degree inside the partition, while trimming
+	private AtomicIntegerArray inDegrees;
+	private AtomicIntegerArray outDegrees;
+	// Smallest vertex id of the component, for DONE vertices
+	private int[] colors;
+	private final AtomicInteger nextLabel = new AtomicInteger();
+
+	private ExecutorService executor;
+	private int nThreads;
+	// Partitions at least this large use all threads for their searches
+	int parallelThreshold = 1 << 15;
+
+	private final AtomicInteger numSingletons = new AtomicInteger();
+	private final AtomicInteger numComponents = new AtomicInteger();
+	private final AtomicInteger numPartitions = new AtomicInteger();
+
+	public FwBwSCC(String baseFilename, int nShards) {
+		this.baseFilename = baseFilename;
+		this.nShards = nShards;
+	}
+
+	/**
+	 * Reads the adjacency shards into out-edges by source (CSR) and in-edges
+	 * by destination (CSC).
+	 */
+	private void load() throws IOException {
+		long startTime = System.currentTimeMillis();
+		final int nv = ChiFilenames.numVertices(baseFilename, nShards);
+		if (nv > MAX_VERTICES) {
+			throw new IOException(baseFilename
+					+ " has too many vertices for FwBwSCC");
+		}
+		numVertices = nv;
+
+		final int[] outCursor = new int[nv + 1];
+		final int[] inCursor = new int[nv + 1];
+		for (int p = 0; p < nShards; p++) {
+			InMemoryEngine.readShard(baseFilename, p, nShards,
+					new InMemoryEngine.EdgeVisitor() {
+						public void edge(int src, int dst, int index) {
+							outCursor[src]++;
+							inCursor[dst]++;
+						}
+					});
+		}
+		outOffsets = new int[nv + 1];
+		inOffsets = new int[nv + 1];
+		long edges = 0;
+		for (int v = 0; v < nv; v++) {
+			edges += outCursor[v];
+			if (edges > Integer.MAX_VALUE - 8) {
+				throw new IOException(baseFilename
+						+ " has too many edges for FwBwSCC");
+			}
+			outOffsets[v + 1] = outOffsets[v] + outCursor[v];
+			inOffsets[v + 1] = inOffsets[v] + inCursor[v];
+		}
+		numEdges = (int) edges;
+		System.arraycopy(outOffsets, 0, outCursor, 0, nv + 1);
+		System.arraycopy(inOffsets, 0, inCursor, 0, nv + 1);
+
+		outTargets = new int[numEdges];
+		inSources = new int[numEdges];
+		for (int p = 0; p < nShards; p++) {
+			InMemoryEngine.readShard(baseFilename, p, nShards,
+					new InMemoryEngine.EdgeVisitor() {
+						public void edge(int src, int dst, int index) {
+							outTargets[outCursor[src]++] = dst;
+							inSources[inCursor[dst]++] = src;
+						}
+					});
+		}
+
+		logger.info(String.format(
+				"%s: %d vertices, %d edges loaded in %.3fs", baseFilename, nv,
+				numEdges, (System.currentTimeMillis() - startTime) * 0.001));
+	}
+
+	/**
+	 * Runs step on the vertices, in parallel chunks if asked to and there
+	 * are enough of them. Only the decomposition thread runs steps in
+	 * parallel; the threads of small partitions never wait for the pool.
+	 *
+	 * @return the vertices claimed, chunk after chunk
+	 */
+	private IntList forEach(final Step step, final int[] vertices,
+			final int n, boolean parallel) {
+		if (!parallel || n <= GRAIN) {
+			IntList next = new IntList();
+			for (int i = 0; i < n; i++) {
+				step.visit(vertices[i], next);
+			}
+			return next;
+		}
+
+		int chunkSize = Math.max(GRAIN, n / (4 * nThreads) + 1);
+		List<Future<IntList>> futures = new ArrayList<Future<IntList>>();
+		for (int start = 0; start < n; start += chunkSize) {
+			final int chunkStart = start;
+			final int chunkEnd = Math.min(n, start + chunkSize);
+			futures.add(executor.submit(new Callable<IntList>() {
+				public IntList call() {
+					IntList next = new IntList();
+					for (int i = chunkStart; i < chunkEnd; i++) {
+						step.visit(vertices[i], next);
+					}
+					return next;
+				}
+			}));
+		}
+
+		IntList next = new IntList();
+		for (Future<IntList> future : futures) {
+			next.addAll(get(future));
+		}
+		return next;
+	}
+
+	private static <T> T get(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("SCC decomposition failed",
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Peels off the vertices of the partition without an in-edge or an
+	 * out-edge inside it, until none is left. Degrees are counted before any
+	 * vertex is removed, so every removal takes back exactly one counted
+	 * edge.
+	 *
+	 * @return the vertices left in the partition
+	 */
+	private IntList trim(final int label, IntList members, boolean parallel) {
+		IntList frontier = forEach(new Step() {
+			public void visit(int v, IntList next) {
+				int in = 0;
+				for (int i = inOffsets[v]; i < inOffsets[v + 1]; i++) {
+					if (labels.get(inSources[i]) == label) {
+						in++;
+					}
+				}
+				int out = 0;
+				for (int i = outOffsets[v]; i < outOffsets[v + 1]; i++) {
+					if (labels.get(outTargets[i]) == label) {
+						out++;
+					}
+				}
+				inDegrees.set(v, in);
+				outDegrees.set(v, out);
+				if (in == 0 || out == 0) {
+					next.add(v);
+				}
+			}
+		}, members.array, members.size, parallel);
+
+		for (int i = 0; i < frontier.size; i++) {
+			labels.set(frontier.array[i], SINGLETON);
+		}
+		int trimmed = frontier.size;
+		Step peel = new Step() {
+			public void visit(int v, IntList next) {
+				for (int i = outOffsets[v]; i < outOffsets[v + 1]; i++) {
+					int w = outTargets[i];
+					if (labels.get(w) == label
+							&& inDegrees.decrementAndGet(w) == 0
+							&& labels.compareAndSet(w, label, SINGLETON)) {
+						next.add(w);
+					}
+				}
+				for (int i = inOffsets[v]; i < inOffsets[v + 1]; i++) {
+					int w = inSources[i];
+					if (labels.get(w) == label
+							&& outDegrees.decrementAndGet(w) == 0
+							&& labels.compareAndSet(w, label, SINGLETON)) {
+						next.add(w);
+					}
+				}
+			}
+		};
+		while (frontier.size > 0) {
+			frontier = forEach(peel, frontier.array, frontier.size, parallel);
+			trimmed += frontier.size;
+		}
+		numSingletons.addAndGet(trimmed);
+
+		if (trimmed == 0) {
+			return members;
+		}
+		IntList left = new IntList(members.size - trimmed);
+		for (int i = 0; i < members.size; i++) {
+			if (labels.get(members.array[i]) == label) {
+				left.add(members.array[i]);
+			}
+		}
+		return left;
+	}
+
+	/**
+	 * Relabels from to to on every vertex reachable from the pivot inside
+	 * the partition, level by level. The pivot is already labeled to.
+	 */
+	private void searchForward(int pivot, final int from, final int to,
+			boolean parallel) {
+		Step step = new Step() {
+			public void visit(int v, IntList next) {
+				for (int i = outOffsets[v]; i < outOffsets[v + 1]; i++) {
+					int w = outTargets[i];
+					if (labels.get(w) == from
+							&& labels.compareAndSet(w, from, to)) {
+						next.add(w);
+					}
+				}
+			}
+		};
+		IntList frontier = new IntList();
+		frontier.add(pivot);
+		while (frontier.size > 0) {
+			frontier = forEach(step, frontier.array, frontier.size, parallel);
+		}
+	}
+
+	/**
+	 * Searches backward from the pivot: forward-reached vertices are the
+	 * component and become DONE, the others of the partition get the
+	 * backward label.
+	 */
+	private void searchBackward(int pivot, final int label,
+			final int forward, final int backward, boolean parallel) {
+		Step step = new Step() {
+			public void visit(int v, IntList next) {
+				for (int i = inOffsets[v]; i < inOffsets[v + 1]; i++) {
+					int w = inSources[i];
+					int l = labels.get(w);
+					if (l == forward) {
+						if (labels.compareAndSet(w, forward, DONE)) {
+							next.add(w);
+						}
+					} else if (l == label) {
+						if (labels.compareAndSet(w, label, backward)) {
+							next.add(w);
+						}
+					}
+				}
+			}
+		};
+		IntList frontier = new IntList();
+		frontier.add(pivot);
+		while (frontier.size > 0) {
+			frontier = forEach(step, frontier.array, frontier.size, parallel);
+		}
+	}
+
+	/**
+	 * Vertices sharing a label, none of them finished.
+	 */
+	private static class Partition {
+		final int label;
+		final IntList members;
+
+		Partition(int label, IntList members) {
+			this.label = label;
+			this.members = members;
+		}
+	}
+
+	/**
+	 * Trims the partition, colors the component of a pivot and adds the
+	 * partitions left over to parts.
+	 *
+	 * @param pivotByDegree
+	 *            take the vertex with the most in times out-edges as pivot,
+	 *            which likely lies in the largest component; otherwise a
+	 *            random one, so a chain of components is split in the middle
+	 */
+	private void decompose(Partition partition, boolean pivotByDegree,
+			Random random, boolean parallel, List<Partition> parts) {
+		numPartitions.incrementAndGet();
+		int label = partition.label;
+		IntList members = trim(label, partition.members, parallel);
+		if (members.size == 0) {
+			return;
+		}
+		if (members.size == 1) {
+			labels.set(members.array[0], SINGLETON);
+			numSingletons.incrementAndGet();
+			return;
+		}
+
+		int pivot = members.array[random.nextInt(members.size)];
+		if (pivotByDegree) {
+			long best = -1;
+			for (int i = 0; i < members.size; i++) {
+				int v = members.array[i];
+				// Trimming left the degrees inside the partition
+				long degree = (long) inDegrees.get(v) * outDegrees.get(v);
+				if (degree > best) {
+					best = degree;
+					pivot = v;
+				}
+			}
+		}
+
+		// The unreached vertices keep the label of the partition
+		int forward = nextLabel.incrementAndGet();
+		int backward = nextLabel.incrementAndGet();
+		labels.set(pivot, forward);
+		searchForward(pivot, label, forward, parallel);
+		labels.set(pivot, DONE);
+		searchBackward(pivot, label, forward, backward, parallel);
+
+		IntList forwardOnly = new IntList();
+		IntList backwardOnly = new IntList();
+		IntList rest = new IntList();
+		IntList found = new IntList();
+		int color = Integer.MAX_VALUE;
+		for (int i = 0; i < members.size; i++) {
+			int v = members.array[i];
+			int l = labels.get(v);
+			if (l == DONE) {
+				found.add(v);
+				color = Math.min(color, v);
+			} else if (l == forward) {
+				forwardOnly.add(v);
+			} else if (l == backward) {
+				backwardOnly.add(v);
+			} else {
+				rest.add(v);
+			}
+		}
+
+		if (found.size == 1) {
+			labels.set(pivot, SINGLETON);
+			numSingletons.incrementAndGet();
+		} else {
+			for (int i = 0; i < found.size; i++) {
+				colors[found.array[i]] = color;
+			}
+			numComponents.incrementAndGet();
+		}
+
+		if (forwardOnly.size > 0) {
+			parts.add(new Partition(forward, forwardOnly));
+		}
+		if (backwardOnly.size > 0) {
+			parts.add(new Partition(backward, backwardOnly));
+		}
+		if (rest.size > 0) {
+			parts.add(new Partition(label, rest));
+		}
+	}
+
+	/**
+	 * Decomposes a small partition and everything it splits into on the
+	 * calling thread.
+	 */
+	private class SmallPartition implements Runnable {
+		private final Partition partition;
+
+		SmallPartition(Partition partition) {
+			this.partition = partition;
+		}
+
+		public void run() {
+			Random random = new Random(partition.label);
+			LinkedList<Partition> stack = new LinkedList<Partition>();
+			stack.add(partition);
+			while (!stack.isEmpty()) {
+				decompose(stack.removeLast(), false, random, false, stack);
+			}
+		}
+	}
+
+	/**
+	 * Finds the components and writes every vertex with the smallest id of
+	 * its component to the sink, vertices in id order.
+	 *
+	 * @param translate
+	 *            maps the vertex ids of the shards back to those of the input
+	 */
+	public void run(ResultSink sink, ComponentStats stats,
+			VertexIdTranslate translate) throws IOException {
+		load();
+		long startTime = System.currentTimeMillis();
+
+		int nv = numVertices;
+		labels = new AtomicIntegerArray(nv);
+		inDegrees = new AtomicIntegerArray(nv);
+		outDegrees = new AtomicIntegerArray(nv);
+		colors = new int[nv];
+
+		nThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		if (System.getProperty("num_threads") != null) {
+			nThreads = Integer.parseInt(System.getProperty("num_threads"));
+		}
+		executor = Executors.newFixedThreadPool(nThreads);
+
+		try {
+			IntList all = new IntList(nv);
+			for (int v = 0; v < nv; v++) {
+				all.add(v);
+			}
+			LinkedList<Partition> large = new LinkedList<Partition>();
+			large.add(new Partition(0, all));
+			List<Future<?>> small = new ArrayList<Future<?>>();
+			Random random = new Random(0);
+			boolean first = true;
+
+			while (!large.isEmpty()) {
+				List<Partition> parts = new ArrayList<Partition>();
+				decompose(large.removeLast(), first, random, true, parts);
+				first = false;
+				for (Partition part : parts) {
+					if (part.members.size >= parallelThreshold) {
+						large.add(part);
+					} else {
+						small.add(executor.submit(new SmallPartition(part)));
+					}
+				}
+			}
+			for (Future<?> future : small) {
+				get(future);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		logger.info(String.format(
+				"%s: forward-backward found %d components and %d singletons "
+						+ "in %d partitions, %.3fs", baseFilename,
+				numComponents.get(), numSingletons.get(), numPartitions.get(),
+				(System.currentTimeMillis() - startTime) * 0.001));
+
+		for (int v = 0; v < nv; v++) {
+			int label = labels.get(v);
+			if (label == SINGLETON) {
+				stats.addTrimmed();
+				sink.write(translate.backward(v), v);
+			} else if (label == DONE) {
+				stats.add(colors[v]);
+				sink.write(translate.backward(v), colors[v]);
+			} else {
+				throw new IllegalStateException("Vertex " + v
+						+ " was not assigned a component");
+			}
+		}
+	}
+
+}
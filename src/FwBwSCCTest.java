@@ -0,0 +1,141 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import demo.TestFiles;
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+
+public class FwBwSCCTest {
+	private File dir;
+	private File graph;
+
+	/**
+	 * Keeps the component of each vertex.
+	 */
+	private static class MapSink implements ResultSink {
+		final Map<Integer, Integer> components;
+
+		MapSink() {
+			components = new HashMap<Integer, Integer>();
+		}
+
+		public void write(int vertexId, int componentId) {
+			assertNull(components.put(vertexId, componentId));
+		}
+
+		public void close() {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		dir = TestFiles.createTempDir("fwbw");
+		graph = new File(dir, "graph");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFiles.delete(dir);
+	}
+
+	private void writeGraph(String edges) throws IOException {
+		Writer out = new FileWriter(graph);
+		out.write(edges);
+		out.close();
+	}
+
+	private MapSink runJob(String algorithm) throws Exception {
+		MapSink sink = new MapSink();
+		SCCJob job = new SCCJob(graph.getPath(), 2, "edgelist", sink);
+		job.setAlgorithm(algorithm);
+		job.run();
+		return sink;
+	}
+
+	private MapSink runForwardBackward(int parallelThreshold,
+			ComponentStats stats) throws Exception {
+		MapSink sink = new MapSink();
+		FwBwSCC scc = new FwBwSCC(graph.getPath(), 2);
+		scc.parallelThreshold = parallelThreshold;
+		File translateFile = new File(ChiFilenames.getVertexTranslateDefFile(
+				graph.getPath(), 2));
+		scc.run(sink, stats, VertexIdTranslate.fromFile(translateFile));
+		return sink;
+	}
+
+	/**
+	 * Same components, colored alike, as the propagation passes, whether
+	 * partitions are searched on one thread or on all.
+	 */
+	private void checkAgainstPropagation() throws Exception {
+		MapSink expected = runJob("propagation");
+		assertFalse(new File(graph.getPath() + ".2.sccstate").exists());
+		ComponentStats expectedStats = new ComponentStats();
+		for (int color : expected.components.values()) {
+			expectedStats.add(color);
+		}
+
+		assertEquals(expected.components, runJob("fwbw").components);
+		for (int threshold : new int[] { 1 << 15, 2 }) {
+			ComponentStats stats = new ComponentStats();
+			assertEquals(expected.components,
+					runForwardBackward(threshold, stats).components);
+			assertEquals(expectedStats.getNumComponents(),
+					stats.getNumComponents());
+			assertEquals(expectedStats.getNumSingletons(),
+					stats.getNumSingletons());
+		}
+	}
+
+	@Test
+	public void testSmallGraph() throws Exception {
+		writeGraph("0 1\n1 2\n2 0\n2 3\n3 4\n4 3\n4 5\n");
+		checkAgainstPropagation();
+
+		MapSink sink = runJob("fwbw");
+		assertEquals(sink.components.get(0), sink.components.get(1));
+		assertEquals(sink.components.get(0), sink.components.get(2));
+		assertEquals(sink.components.get(3), sink.components.get(4));
+		assertFalse(sink.components.get(0).equals(sink.components.get(3)));
+		assertFalse(sink.components.get(4).equals(sink.components.get(5)));
+	}
+
+	@Test
+	public void testRandomGraph() throws Exception {
+		StringBuilder edges = new StringBuilder();
+		Random random = new Random(5);
+		for (int i = 0; i < 3000; i++) {
+			edges.append(random.nextInt(2000) + " " + random.nextInt(2000)
+					+ "\n");
+		}
+		writeGraph(edges.toString());
+		checkAgainstPropagation();
+	}
+
+	@Test
+	public void testChainOfCycles() throws Exception {
+		// 200 triangles, each with an edge to the next one
+		StringBuilder edges = new StringBuilder();
+		for (int c = 0; c < 200; c++) {
+			int v = 3 * c;
+			edges.append(v + " " + (v + 1) + "\n" + (v + 1) + " " + (v + 2)
+					+ "\n" + (v + 2) + " " + v + "\n");
+			if (c > 0) {
+				edges.append((v - 1) + " " + v + "\n");
+			}
+		}
+		writeGraph(edges.toString());
+		checkAgainstPropagation();
+	}
+}
@@ -0,0 +1,322 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import demo.ConnectedComponents;
+import demo.InMemoryEngine;
+import demo.Pagerank;
+import demo.ParallelSharder;
+import demo.ShardCache;
+import demo.WeightedEdge;
+import demo.WeightedEdgeConverter;
+import demo.WeightedPagerank;
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.datablocks.FloatConverter;
+import edu.cmu.graphchi.datablocks.IntConverter;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+import edu.cmu.graphchi.io.CompressedIO;
+import edu.cmu.graphchi.preprocessing.FastSharder;
+
+/**
+ * End-to-end benchmark: generates synthetic graphs, shards them with
+ * FastSharder and runs SCC, Pagerank, WeightedPagerank and
+ * ConnectedComponents with the engine each program's main uses. Each run
+ * appends one line to a CSV file, so results of different shard counts and
+ * machines can be compared; engine_mode records whether the run was in
+ * memory, on disk or forward-backward SCC.
+ *
+ * Every algorithm shards the graph again under its own name, because the
+ * shards depend on the vertex and edge value sizes. Bytes read and written
+ * come from /proc/self/io and are -1 where it is not available. Compression
+ * of edge data is a global switch in GraphChi; it is disabled unless
+ * -Dbench.compression=true.
+ */
+public class GraphBenchmark {
+
+	private static Logger logger = ChiLogger.getLogger("benchmark");
+
+	private static final String HEADER = "graph,vertices,edges,shards,algorithm,"
+			+ "compressed,threads,max_heap_mb,preprocess_s,run_s,iterations,"
+			+ "mean_iteration_s,max_iteration_s,iteration_times,edges_per_s,"
+			+ "peak_heap_mb,bytes_read,bytes_written,components,"
+			+ "expected_components,engine_mode";
+
+	private final String dir;
+	private final PrintWriter csv;
+
+	private String graphName;
+	private GraphGenerator generator;
+
+	public GraphBenchmark(String dir, PrintWriter csv) {
+		this.dir = dir;
+		this.csv = csv;
+	}
+
+	/**
+	 * Generates the graph into the benchmark directory.
+	 */
+	public void generate(String type, int scale, int edgeFactor, long seed)
+			throws IOException {
+		graphName = type + "-" + scale;
+		generator = new GraphGenerator(seed);
+		long t0 = System.currentTimeMillis();
+		generator.generate(type, inputFile(), scale, edgeFactor);
+		logger.info(String.format("Generated %s: %d vertices, %d edges, %.3fs",
+				graphName, generator.getNumVertices(),
+				generator.getNumEdges(),
+				(System.currentTimeMillis() - t0) * 0.001));
+	}
+
+	private String inputFile() {
+		return new File(dir, graphName).getPath();
+	}
+
+	/**
+	 * Shards the current graph and runs one algorithm on it.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void run(String algorithm, int nShards) throws Exception {
+		// SCCJob shards its input itself unless the shard cache of the input
+		// is up to date, so SCC shards are named after the input file
+		String baseFilename = (algorithm.equals("scc") ? inputFile()
+				: new File(dir, graphName + "." + algorithm).getPath());
+		IterationTimer timer = new IterationTimer();
+		long components = -1;
+		String engineMode;
+
+		resetPeakHeap();
+		long[] io0 = readIoCounters();
+
+		// Preprocess
+		long t0 = System.nanoTime();
+		FastSharder sharder;
+		if (algorithm.equals("scc")) {
+			sharder = SCCJob.createSharder(baseFilename, nShards);
+		} else if (algorithm.equals("pagerank")) {
+			sharder = Pagerank.createSharder(baseFilename, nShards);
+		} else if (algorithm.equals("weighted_pagerank")) {
+			sharder = WeightedPagerank.createSharder(baseFilename, nShards);
+		} else if (algorithm.equals("cc")) {
+			sharder = ConnectedComponents.createSharder(baseFilename, nShards);
+		} else {
+			throw new IllegalArgumentException("Unknown algorithm: "
+					+ algorithm);
+		}
+		ParallelSharder.shard(sharder, new File(inputFile()), "edgelist");
+		if (algorithm.equals("scc")) {
+			new ShardCache(baseFilename, nShards, "edgelist")
+					.sharded(new EdgeValueConverter());
+		}
+
+		// Run, with the engine set up as in each program's main
+		long t1 = System.nanoTime();
+		if (algorithm.equals("scc")) {
+			SCCJob job = new SCCJob(baseFilename, nShards, "edgelist",
+					new TextResultSink(baseFilename + ".scc"));
+			job.setIterationTimer(timer);
+			job.run();
+			// The engine pads the vertex count; the extra ids have no edges
+			// and each forms a component of its own
+			components = job.getStats().getNumComponents()
+					- (job.getStats().getNumVertices() - generator
+							.getNumVertices());
+			engineMode = job.getEngineMode();
+		} else if (algorithm.equals("pagerank")) {
+			GraphChiEngine<Float, Float> engine = InMemoryEngine.create(
+					baseFilename, nShards, new FloatConverter(),
+					new FloatConverter());
+			engine.setModifiesInedges(false);
+			engine.run(timer.wrap((GraphChiProgram<Float, Float>) new Pagerank()),
+					Integer.getInteger("bench.iterations", 10));
+			engineMode = engineMode(engine);
+		} else if (algorithm.equals("weighted_pagerank")) {
+			GraphChiEngine<Float, WeightedEdge> engine = new GraphChiEngine<Float, WeightedEdge>(
+					baseFilename, nShards);
+			engine.setEdataConverter(new WeightedEdgeConverter(true));
+			engine.setVertexDataConverter(new FloatConverter());
+			engine.setModifiesInedges(false);
+			engine.run(timer
+					.wrap((GraphChiProgram<Float, WeightedEdge>) new WeightedPagerank()),
+					Integer.getInteger("bench.iterations", 4));
+			engineMode = engineMode(engine);
+		} else {
+			GraphChiEngine<Integer, Integer> engine = InMemoryEngine.create(
+					baseFilename, nShards, new IntConverter(),
+					new IntConverter());
+			engine.setEnableScheduler(true);
+			engine.run(timer
+					.wrap((GraphChiProgram<Integer, Integer>) new ConnectedComponents()),
+					Integer.getInteger("bench.iterations", 1000));
+			engineMode = engineMode(engine);
+		}
+		long t2 = System.nanoTime();
+
+		long[] io1 = readIoCounters();
+		List<Long> iterations = timer.getIterationNanos();
+		double runSeconds = (t2 - t1) * 1e-9;
+
+		long maxNanos = 0, sumNanos = 0;
+		StringBuilder times = new StringBuilder();
+		for (int i = 0; i < iterations.size(); i++) {
+			long nanos = iterations.get(i);
+			maxNanos = Math.max(maxNanos, nanos);
+			sumNanos += nanos;
+			times.append(i > 0 ? ";" : "").append(
+					String.format(Locale.US, "%.4f", nanos * 1e-9));
+		}
+
+		csv.println(String.format(Locale.US,
+				"%s,%d,%d,%d,%s,%b,%s,%d,%.3f,%.3f,%d,%.4f,%.4f,%s,%.0f,%d,"
+						+ "%d,%d,%d,%d,%s", graphName,
+				generator.getNumVertices(), generator.getNumEdges(), nShards,
+				algorithm, CompressedIO.isCompressionEnabled(),
+				System.getProperty("num_threads", "default"), Runtime
+						.getRuntime().maxMemory() >> 20, (t1 - t0) * 1e-9,
+				runSeconds, iterations.size(),
+				(iterations.isEmpty() ? 0 : sumNanos * 1e-9
+						/ iterations.size()), maxNanos * 1e-9, times,
+				generator.getNumEdges() * iterations.size() / runSeconds,
+				peakHeap() >> 20, (io0 == null ? -1 : io1[0] - io0[0]),
+				(io0 == null ? -1 : io1[1] - io0[1]), components,
+				(algorithm.equals("scc") ? generator.getNumComponents() : -1),
+				engineMode));
+		csv.flush();
+
+		logger.info(String.format(
+				"%s/%s, %d shards: preprocess %.3fs, run %.3fs, %d iterations",
+				graphName, algorithm, nShards, (t1 - t0) * 1e-9, runSeconds,
+				iterations.size()));
+		if (algorithm.equals("scc") && generator.getNumComponents() >= 0
+				&& components != generator.getNumComponents()) {
+			logger.warning(String.format("%s: expected %d components, got %d",
+					graphName, generator.getNumComponents(), components));
+		}
+	}
+
+	private static String engineMode(GraphChiEngine<?, ?> engine) {
+		return (engine instanceof InMemoryEngine ? "memory" : "disk");
+	}
+
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Sum of the peak usage of the heap pools since the last reset. The
+	 * pools peak at different times, so this is an upper bound.
+	 */
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * @return {rchar, wchar} of this process, or null if unavailable
+	 */
+	private static long[] readIoCounters() {
+		File file = new File("/proc/self/io");
+		if (!file.exists()) {
+			return null;
+		}
+		long[] counters = new long[2];
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith("rchar:")) {
+						counters[0] = Long.parseLong(line.substring(6).trim());
+					} else if (line.startsWith("wchar:")) {
+						counters[1] = Long.parseLong(line.substring(6).trim());
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return counters;
+	}
+
+	private static List<String> split(String s) {
+		List<String> items = new ArrayList<String>();
+		for (String item : s.split(",")) {
+			if (item.length() > 0) {
+				items.add(item);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Usage: java GraphBenchmark csv-file scale shards[,shards...]
+	 * [graphs (rmat,grid,chain,scc)] [algorithms
+	 * (scc,pagerank,weighted_pagerank,cc)]
+	 *
+	 * Options: -Dbench.dir (work directory, default bench),
+	 * -Dbench.edgefactor (default 16), -Dbench.seed,
+	 * -Dbench.iterations (Pagerank, WeightedPagerank; a cap for CC),
+	 * -Dbench.compression=true.
+	 */
+	public static void main(String[] args) throws Exception {
+		String csvFile = args[0];
+		int scale = Integer.parseInt(args[1]);
+		List<String> shards = split(args[2]);
+		List<String> graphs = split(args.length > 3 ? args[3]
+				: "rmat,grid,chain,scc");
+		List<String> algorithms = split(args.length > 4 ? args[4]
+				: "scc,pagerank,weighted_pagerank,cc");
+
+		File dir = new File(System.getProperty("bench.dir", "bench"));
+		dir.mkdirs();
+		if (!Boolean.getBoolean("bench.compression")) {
+			CompressedIO.disableCompression();
+		}
+
+		boolean header = !new File(csvFile).exists()
+				|| new File(csvFile).length() == 0;
+		PrintWriter csv = new PrintWriter(new FileWriter(csvFile, true));
+		try {
+			if (header) {
+				csv.println(HEADER);
+			}
+			GraphBenchmark benchmark = new GraphBenchmark(dir.getPath(), csv);
+			for (String graph : graphs) {
+				benchmark.generate(graph, scale,
+						Integer.getInteger("bench.edgefactor", 16),
+						Long.getLong("bench.seed", 1L));
+				for (String algorithm : algorithms) {
+					for (String n : shards) {
+						benchmark.run(algorithm, Integer.parseInt(n));
+					}
+				}
+			}
+		} finally {
+			csv.close();
+		}
+		logger.info("Results appended to " + csvFile);
+	}
+
+}
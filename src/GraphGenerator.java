@@ -0,0 +1,190 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes synthetic graphs as edge lists ("source target weight" per line)
+ * for the benchmarks. Every vertex id in [0, numVertices) appears in some
+ * edge, and the integer weights (1-9) let WeightedPagerank read the same
+ * file.
+ */
+public class GraphGenerator {
+
+	private final Random random;
+	private int numVertices;
+	private long numEdges;
+	private int numComponents = -1;
+
+	public GraphGenerator(long seed) {
+		random = new Random(seed);
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public long getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * @return number of strongly connected components, or -1 if the
+	 *         generator does not know it
+	 */
+	public int getNumComponents() {
+		return numComponents;
+	}
+
+	/**
+	 * Writes one of rmat, grid, chain or scc with about 2^scale vertices.
+	 */
+	public void generate(String type, String filename, int scale,
+			int edgeFactor) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(filename), 1 << 20);
+		try {
+			numEdges = 0;
+			numComponents = -1;
+			if (type.equals("rmat")) {
+				rmat(out, scale, edgeFactor);
+			} else if (type.equals("grid")) {
+				grid(out, scale);
+			} else if (type.equals("chain")) {
+				chain(out, scale);
+			} else if (type.equals("scc")) {
+				knownComponents(out, scale, edgeFactor);
+			} else {
+				throw new IllegalArgumentException("Unknown graph type: "
+						+ type);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private void edge(Writer out, int from, int to) throws IOException {
+		out.write(Integer.toString(from));
+		out.write(' ');
+		out.write(Integer.toString(to));
+		out.write(' ');
+		out.write('1' + random.nextInt(9));
+		out.write('\n');
+		numEdges++;
+	}
+
+	/**
+	 * Power-law graph (R-MAT, a=0.57, b=0.19, c=0.19, d=0.05) with
+	 * edgeFactor * 2^scale edges. Self-loops are dropped, and a cycle
+	 * through all vertices keeps every id in use.
+	 */
+	private void rmat(Writer out, int scale, int edgeFactor)
+			throws IOException {
+		numVertices = 1 << scale;
+		long m = (long) edgeFactor * numVertices - numVertices;
+
+		for (long e = 0; e < m; e++) {
+			int from = 0, to = 0;
+			for (int bit = scale - 1; bit >= 0; bit--) {
+				double p = random.nextDouble();
+				if (p < 0.57) {
+					// a: top-left
+				} else if (p < 0.76) {
+					to |= (1 << bit);
+				} else if (p < 0.95) {
+					from |= (1 << bit);
+				} else {
+					from |= (1 << bit);
+					to |= (1 << bit);
+				}
+			}
+			if (from != to) {
+				edge(out, from, to);
+			}
+		}
+		for (int v = 0; v < numVertices; v++) {
+			edge(out, v, (v + 1) % numVertices);
+		}
+	}
+
+	/**
+	 * Square lattice with edges in both directions between 4-neighbors: one
+	 * strongly connected component with a large diameter.
+	 */
+	private void grid(Writer out, int scale) throws IOException {
+		int side = 1 << (scale / 2);
+		numVertices = side * side;
+		numComponents = 1;
+
+		for (int r = 0; r < side; r++) {
+			for (int c = 0; c < side; c++) {
+				int v = r * side + c;
+				if (c + 1 < side) {
+					edge(out, v, v + 1);
+					edge(out, v + 1, v);
+				}
+				if (r + 1 < side) {
+					edge(out, v, v + side);
+					edge(out, v + side, v);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Directed path 0 -> 1 -> ... -> n-1: every vertex is its own component.
+	 */
+	private void chain(Writer out, int scale) throws IOException {
+		numVertices = 1 << scale;
+		numComponents = numVertices;
+
+		for (int v = 0; v + 1 < numVertices; v++) {
+			edge(out, v, v + 1);
+		}
+	}
+
+	/**
+	 * Components of random sizes (from singletons to a large one), each a
+	 * cycle plus random chords inside it. Edges between components only go
+	 * from a lower to a higher component, so the components are exactly the
+	 * SCCs.
+	 */
+	private void knownComponents(Writer out, int scale, int edgeFactor)
+			throws IOException {
+		numVertices = 1 << scale;
+		numComponents = 0;
+
+		int first = 0;
+		while (first < numVertices) {
+			int remaining = numVertices - first;
+			int size = Math.min(remaining,
+					1 + random.nextInt(1 << random.nextInt(scale)));
+			numComponents++;
+
+			if (size > 1) {
+				for (int i = 0; i < size; i++) {
+					edge(out, first + i, first + (i + 1) % size);
+				}
+				for (long i = 0; i < (long) size * (edgeFactor / 2); i++) {
+					int from = first + random.nextInt(size);
+					int to = first + random.nextInt(size);
+					if (from != to) {
+						edge(out, from, to);
+					}
+				}
+			}
+
+			// Forward edges into later components
+			if (first + size < numVertices) {
+				for (int i = 0; i < Math.max(1, size * edgeFactor / 4); i++) {
+					int from = first + random.nextInt(size);
+					int to = first + size
+							+ random.nextInt(numVertices - first - size);
+					edge(out, from, to);
+				}
+			}
+			first += size;
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cmu.graphchi.ChiVertex;
+import edu.cmu.graphchi.GraphChiContext;
+import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.engine.VertexInterval;
+
+/**
+ * Records how long each engine iteration takes. Programs are wrapped with
+ * {@link #wrap(GraphChiProgram)}; iterations of several runs add up. An
+ * iteration counts once its endIteration() is reached (the engine also calls
+ * beginIteration() for the iteration it then skips because nothing is
+ * scheduled).
+ */
+public class IterationTimer {
+
+	private final List<Long> iterationNanos = new ArrayList<Long>();
+
+	public synchronized List<Long> getIterationNanos() {
+		return new ArrayList<Long>(iterationNanos);
+	}
+
+	synchronized void add(long nanos) {
+		iterationNanos.add(nanos);
+	}
+
+	public <V, E> GraphChiProgram<V, E> wrap(
+			final GraphChiProgram<V, E> program) {
+		return new GraphChiProgram<V, E>() {
+			private long start;
+
+			@Override
+			public void update(ChiVertex<V, E> vertex, GraphChiContext context) {
+				program.update(vertex, context);
+			}
+
+			@Override
+			public void beginIteration(GraphChiContext ctx) {
+				start = System.nanoTime();
+				program.beginIteration(ctx);
+			}
+
+			@Override
+			public void endIteration(GraphChiContext ctx) {
+				program.endIteration(ctx);
+				add(System.nanoTime() - start);
+			}
+
+			@Override
+			public void beginInterval(GraphChiContext ctx,
+					VertexInterval interval) {
+				program.beginInterval(ctx, interval);
+			}
+
+			@Override
+			public void endInterval(GraphChiContext ctx, VertexInterval interval) {
+				program.endInterval(ctx, interval);
+			}
+
+			@Override
+			public void beginSubInterval(GraphChiContext ctx,
+					VertexInterval interval) {
+				program.beginSubInterval(ctx, interval);
+			}
+
+			@Override
+			public void endSubInterval(GraphChiContext ctx,
+					VertexInterval interval) {
+				program.endSubInterval(ctx, interval);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,13 @@
+import java.io.IOException;
+
+/**
+ * Receives the component of each vertex once it is final. Calls come from
+ * one thread at a time.
+ */
+public interface ResultSink {
+
+	void write(int vertexId, int componentId) throws IOException;
+
+	void close() throws IOException;
+
+}
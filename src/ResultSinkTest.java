@@ -0,0 +1,69 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import demo.TestFiles;
+
+public class ResultSinkTest {
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("scc", ".out");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testAppendInt() {
+		int[] values = { 0, 7, 10, 99, 100, 123456789, Integer.MAX_VALUE, -1,
+				Integer.MIN_VALUE };
+		byte[] array = new byte[12];
+
+		for (int x : values) {
+			int end = TextResultSink.appendInt(array, 0, x);
+			assertEquals(Integer.toString(x), new String(array, 0, end));
+		}
+	}
+
+	@Test
+	public void testTextResultSink() throws IOException {
+		TextResultSink sink = new TextResultSink(file.getPath());
+		StringBuilder expected = new StringBuilder();
+		// More than one buffer
+		for (int i = 0; i < 100000; i++) {
+			sink.write(i * 31, i % 17);
+			expected.append(String.format("%s\t%s\n", i * 31, i % 17));
+		}
+		sink.close();
+
+		assertEquals(expected.toString(), new String(TestFiles.read(file)));
+	}
+
+	@Test
+	public void testBinaryResultSink() throws IOException {
+		BinaryResultSink sink = new BinaryResultSink(file.getPath());
+		for (int i = 0; i < 200000; i++) {
+			sink.write(i, Integer.MAX_VALUE - i);
+		}
+		sink.close();
+
+		ByteBuffer data = ByteBuffer.wrap(TestFiles.read(file)).order(
+				ByteOrder.LITTLE_ENDIAN);
+		assertEquals(200000 * 8, data.remaining());
+		for (int i = 0; i < 200000; i++) {
+			assertEquals(i, data.getInt());
+			assertEquals(Integer.MAX_VALUE - i, data.getInt());
+		}
+	}
+}
@@ -1,172 +1,101 @@
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.logging.Logger;
-
-import org.apache.commons.lang.ArrayUtils;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import edu.cmu.graphchi.ChiEdge;
-import edu.cmu.graphchi.ChiFilenames;
-import edu.cmu.graphchi.ChiLogger;
 import edu.cmu.graphchi.ChiVertex;
 import edu.cmu.graphchi.GraphChiContext;
 import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.Scheduler;
 import edu.cmu.graphchi.datablocks.BytesToValueConverter;
 import edu.cmu.graphchi.datablocks.IntConverter;
-import edu.cmu.graphchi.engine.GraphChiEngine;
 import edu.cmu.graphchi.engine.VertexInterval;
-import edu.cmu.graphchi.preprocessing.EdgeProcessor;
-import edu.cmu.graphchi.preprocessing.FastSharder;
 import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
-import edu.cmu.graphchi.preprocessing.VertexProcessor;
 
 public class SCC {
 
-	private static Logger logger = ChiLogger.getLogger("SCC");
-
-	// 프로그램에서 직접 사용
-	public static int superstep = 0;
-	public static boolean firstIteration = true;
-	public static boolean remainingVertices = true;
-
-	public static GraphChiEngine<VertexValue, EdgeValue> engine = null;
-
 	/**
-	 * Initialize the sharder-program.
-	 * 
-	 * @param graphName
-	 * @param numShards
-	 * @return
-	 * @throws java.io.IOException
-	 */
-	protected static FastSharder<VertexValue, EdgeValue> createSharder(
-			String graphName, int numShards) throws IOException {
-		return new FastSharder<VertexValue, EdgeValue>(graphName, numShards,
-				new VertexProcessor<VertexValue>() {
-					public VertexValue receiveVertexValue(int vertexId,
-							String token) {
-						return new VertexValue();
-					}
-				}, new EdgeProcessor<EdgeValue>() {
-					public EdgeValue receiveEdge(int from, int to, String token) {
-						EdgeValue edgeValue = new EdgeValue();
-						edgeValue.from = from;
-						edgeValue.to = to;
-
-						return edgeValue;
-					}
-				}, new VertexInfoConverter(), new EdgeValueConverter());
-	}
-
-	/**
-	 * Usage: java edu.cmu.graphchi.demo.ConnectedComponents graph-name
-	 * num-shards filetype(edgelist|adjlist) For specifying the number of
-	 * shards, 20-50 million edges/shard is often a good configuration.
+	 * Usage: java SCC graph-name num-shards filetype(edgelist|adjlist) For
+	 * specifying the number of shards, 20-50 million edges/shard is often a
+	 * good configuration. Run with -Dscc.dropcolor=true to keep the vertex
+	 * state without a color column. The components are written to output/out.txt,
+	 * or as int pairs to output/out.bin with -Dscc.output=binary. Component
+	 * statistics go to output/summary.json (-Dscc.topk sets how many of the
+	 * largest components are listed). -Dscc.algorithm=fwbw finds the
+	 * components by forward-backward decomposition in memory, and
+	 * -Dscc.algorithm=auto does so if the graph fits (see
+	 * {@link SCCJob#setAlgorithm}).
 	 */
 	public static void main(String[] args) throws Exception {
 		String baseFilename = args[0];
 		int nShards = Integer.parseInt(args[1]);
 		String fileType = (args.length >= 3 ? args[2] : null);
 
-		/* Create shards */
-		FastSharder sharder = createSharder(baseFilename, nShards);
-		if (baseFilename.equals("pipein")) { // Allow piping graph in
-			sharder.shard(System.in, fileType);
-		} else {
-			if (!new File(ChiFilenames.getFilenameIntervals(baseFilename,
-					nShards)).exists()) {
-				sharder.shard(new FileInputStream(new File(baseFilename)),
-						fileType);
-			} else {
-				logger.info("Found shards -- no need to preprocess");
-			}
-		}
-
-		// Forward
-		SCCForward forward = new SCCForward();
-		engine = new GraphChiEngine<VertexValue, EdgeValue>(baseFilename,
-				nShards);
-		engine.setVertexDataConverter(new VertexInfoConverter());
-		engine.setEdataConverter(new EdgeValueConverter());
-		engine.setEnableScheduler(true);
-		engine.run(forward, 10000);
-
-		// Backward
-		engine.run(new SCCBackward(), 10000);
-
-		// Debug
-		engine.run(new DumpGraph(), 1);
+		boolean binary = "binary".equals(System.getProperty("scc.output"));
+		ResultSink sink = (binary ? new BinaryResultSink("output/out.bin")
+				: new TextResultSink("output/out.txt"));
+		SCCJob job = new SCCJob(baseFilename, nShards, fileType, sink);
+		job.setStoreColor(!Boolean.getBoolean("scc.dropcolor"));
+		job.setSummaryFile("output/summary.json");
+		job.setTopK(Integer.getInteger("scc.topk", 10));
+		job.setAlgorithm(System.getProperty("scc.algorithm", "propagation"));
+		job.run();
 	}
 
 }
 
 class SCCBackward implements GraphChiProgram<VertexValue, EdgeValue> {
 
+	private final SCCJob job;
+
+	public SCCBackward(SCCJob job) {
+		this.job = job;
+	}
+
 	@Override
 	public void update(ChiVertex<VertexValue, EdgeValue> vertex,
 			GraphChiContext context) {
-		if (vertex.getValue().confirmed) {
+		VertexStateStore states = job.states;
+		int id = vertex.getId();
+		if (states.isConfirmed(id)) {
 			return;
 		}
 
-		VertexValue vertexData = vertex.getValue();
+		int minF = states.getMinF(id);
 		boolean propagate = false;
 
-		if (context.getIteration() == 0) {
-
-			// "Leader" of the SCC
-			if (vertexData.getMinF() == vertex.getId()) {
-				vertexData.setMinB(vertex.getId());
-				vertexData.color = vertex.getId();
-				vertex.setValue(vertexData);
-				VertexUtil.removeAllOutEdges(vertex);
-				propagate = true;
-			}
-
+		// "Leader" of the SCC
+		if (context.getIteration() == 0 && minF == id) {
+			propagate = true;
 		} else {
-			boolean match = false;
-
+			/*
+			 * Any live out-edge carrying my forward color means the leader is
+			 * reachable from me, so I belong to its SCC. Checked on every
+			 * iteration: a vertex in a later interval can be scheduled and
+			 * updated within the iteration that wrote the label.
+			 */
 			for (int i = 0; i < vertex.numOutEdges(); i++) {
-				int minval = vertexData.getMinB();
-
-				if (!vertex.outEdge(i).getValue().deleted()) {
-					minval = Math.min(minval, vertex.outEdge(i).getValue()
-							.getMinB());
-					vertexData.updateMinB(minval);
-					vertex.setValue(vertexData);
-
-					if (vertex.getValue().getMinF() == vertex.getValue()
-							.getMinB()) {
-						match = true;
-						break;
-					}
-				}
-			}
+				EdgeValue edgeData = vertex.outEdge(i).getValue();
 
-			if (match) {
-				propagate = true;
-				VertexUtil.removeAllOutEdges(vertex);
-
-				VertexValue val = vertex.getValue();
-				val.color = val.getMinB();
-				val.confirmed = true;
-				vertex.setValue(val);
-			} else {
-				VertexValue val = vertex.getValue();
-				val.color = vertex.getId();
-				val.confirmed = false;
-				vertex.setValue(val);
+				if (!edgeData.deleted() && edgeData.getMinB() == minF) {
+					propagate = true;
+					break;
+				}
 			}
 		}
 
 		if (propagate) {
+			states.confirm(id, minF);
+			VertexUtil.removeAllOutEdges(vertex);
+			job.coloredVertices.incrementAndGet();
+			job.results.confirmed(id, minF);
+
 			for (int i = 0; i < vertex.numInEdges(); i++) {
 				EdgeValue edgeData = vertex.inEdge(i).getValue();
 				if (!edgeData.deleted()) {
-					edgeData.updateMinB(vertex.getValue().getMinB());
+					edgeData.updateMinB(minF);
 					vertex.inEdge(i).setValue(edgeData);
 
 					context.getScheduler().addTask(
@@ -179,20 +108,17 @@ class SCCBackward implements GraphChiProgram<VertexValue, EdgeValue> {
 
 	@Override
 	public void beginIteration(GraphChiContext ctx) {
-		// TODO Auto-generated method stub
-
+		job.beginIteration(ctx);
 	}
 
 	@Override
 	public void endIteration(GraphChiContext ctx) {
-		// TODO Auto-generated method stub
-
+		job.endIteration(ctx, "backward");
 	}
 
 	@Override
 	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
-
+		job.beginInterval();
 	}
 
 	@Override
@@ -203,176 +129,161 @@ class SCCBackward implements GraphChiProgram<VertexValue, EdgeValue> {
 
 	@Override
 	public void beginSubInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
-
+		job.beginSubInterval();
+		job.results.beginSubInterval(interval);
 	}
 
 	@Override
 	public void endSubInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
-
+		job.results.endSubInterval();
 	}
 
 }
 
-class DumpGraph implements GraphChiProgram<VertexValue, EdgeValue> {
-	private VertexIdTranslate translator = SCC.engine.getVertexIdTranslate();
-	private BufferedWriter writer;
+/**
+ * Repeatedly removes vertices without live in-edges or without live
+ * out-edges. Such a vertex cannot lie on a cycle, so it is a singleton SCC.
+ * Removing it takes a live edge away from each neighbor, which is then
+ * scheduled to be checked again, until no source or sink is left.
+ */
+class SCCTrim implements GraphChiProgram<VertexValue, EdgeValue> {
 
-	public DumpGraph() {
-		try {
-			writer = new BufferedWriter(new FileWriter("output/out.txt"));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	private final SCCJob job;
+
+	public SCCTrim(SCCJob job) {
+		this.job = job;
 	}
 
 	@Override
 	public void update(ChiVertex<VertexValue, EdgeValue> vertex,
 			GraphChiContext context) {
-//		debugAll(vertex);
-
-		try {
-			writer.write(String.format("%s\t%s\n",
-					translator.backward(vertex.getId()),
-					vertex.getValue().color));
-		} catch (IOException e) {
-			e.printStackTrace();
+		VertexStateStore states = job.states;
+		int id = vertex.getId();
+		if (job.firstIteration) {
+			/*
+			 * State and edge data left over from an earlier run are not
+			 * trusted. In-edges from later intervals are only reset later in
+			 * this iteration, so the degrees are checked on the next one.
+			 */
+			states.reset(id);
+			VertexUtil.resetAllOutEdges(vertex);
+			context.getScheduler().addTask(id);
+			return;
 		}
-	}
-
-	private void debugAll(ChiVertex<VertexValue, EdgeValue> vertex) {
-		debugVertex(vertex);
-		debugEdge(vertex);
-		System.out.println("");
-	}
 
-	private void debugVertex(ChiVertex<VertexValue, EdgeValue> vertex) {
-		System.out.println(String.format(
-				"%s - MinF: %s / MinB: %s / Color: %s", vertex.getId(), vertex
-						.getValue().getMinF(), vertex.getValue().getMinB(),
-				vertex.getValue().color));
-	}
-
-	private void debugEdge(ChiVertex<VertexValue, EdgeValue> vertex) {
-		for (int i = 0; i < vertex.numOutEdges(); i++) {
-			EdgeValue e = vertex.outEdge(i).getValue();
-
-			System.out.println(String.format("%s => %s / minF: %s / minB : %s",
-					e.from, e.to, e.minF, e.minB));
+		if (states.isConfirmed(id)) {
+			// Colored in the previous round: in-edges were kept to carry minB
+			VertexUtil.removeLiveEdges(vertex, context.getScheduler());
+			job.pending.clear(id);
+			return;
 		}
 
-		for (int i = 0; i < vertex.numInEdges(); i++) {
-			EdgeValue e = vertex.inEdge(i).getValue();
+		if (VertexUtil.numLiveInEdges(vertex) == 0
+				|| VertexUtil.numLiveOutEdges(vertex) == 0) {
+			states.confirm(id, id);
 
-			System.out.println(String.format("%s => %s / minF: %s / minB : %s",
-					e.from, e.to, e.minF, e.minB));
+			VertexUtil.removeLiveEdges(vertex, context.getScheduler());
+			job.trimmedVertices.incrementAndGet();
+			job.results.trimmed(id);
+			job.pending.clear(id);
 		}
 	}
 
 	@Override
 	public void beginIteration(GraphChiContext ctx) {
-		// TODO Auto-generated method stub
-
+		job.beginIteration(ctx);
 	}
 
 	@Override
 	public void endIteration(GraphChiContext ctx) {
-		try {
-			writer.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
+		job.firstIteration = false;
+		job.endIteration(ctx, "trim");
 	}
 
 	@Override
 	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
-
+		job.beginInterval();
 	}
 
 	@Override
 	public void endInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
 
 	}
 
 	@Override
 	public void beginSubInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
-
+		job.beginSubInterval();
+		job.results.beginSubInterval(interval);
 	}
 
 	@Override
 	public void endSubInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
-
+		job.results.endSubInterval();
 	}
 
 }
 
 class SCCForward implements GraphChiProgram<VertexValue, EdgeValue> {
 
+	private final SCCJob job;
+
+	public SCCForward(SCCJob job) {
+		this.job = job;
+	}
+
 	@Override
 	public void update(ChiVertex<VertexValue, EdgeValue> vertex,
 			GraphChiContext context) {
-		if (SCC.firstIteration) {
-			VertexValue vertexValue = new VertexValue();
-			vertexValue.updateMinF(vertex.getId());
-			vertex.setValue(vertexValue);
-		}
-
-		if (vertex.getValue().confirmed) {
-			VertexUtil.removeAllEdges(vertex);
+		VertexStateStore states = job.states;
+		int id = vertex.getId();
+		if (states.isConfirmed(id)) {
 			return;
 		}
 
-		if (vertex.numInEdges() == 0 || vertex.numOutEdges() == 0) {
-			if (vertex.numEdges() > 0) {
-				VertexValue value = new VertexValue();
-				value.confirmed = true;
-				value.updateMinF(vertex.getId());
-				VertexUtil.removeAllEdges(vertex);
-			}
-
-			// System.out.println(String.format("Dangling: %s",
-			// vertex.getId()));
-
-			return;
-		}
+		if (context.getIteration() == 0) {
+			// SCCTrim left only vertices with live in- and out-edges
+			job.remainingVertices = true;
+			job.residualVertices.incrementAndGet();
 
-		SCC.remainingVertices = true;
+			// Restart the coloring from my own id
+			states.setMinF(id, id);
+			states.setMinB(id, Integer.MAX_VALUE);
 
-		VertexValue vertexData = vertex.getValue();
-		boolean propagate = false;
+			for (int i = 0; i < vertex.numOutEdges(); i++) {
+				EdgeValue edgeData = vertex.outEdge(i).getValue();
 
-		if (context.getIteration() == 0) {
-			// vertexData = new VertexValue();
-			// vertexData.updateMinF(vertex.getId());
-			propagate = true;
-		} else {
-			int minid = vertexData.getMinF();
-			for (int i = 0; i < vertex.numInEdges(); i++) {
-				if (!vertex.inEdge(i).getValue().deleted()) {
-					minid = Math.min(minid, vertex.inEdge(i).getValue()
-							.getMinF());
+				if (!edgeData.deleted()) {
+					edgeData.minF = id;
+					edgeData.minB = Integer.MAX_VALUE;
+					vertex.outEdge(i).setValue(edgeData);
 				}
 			}
 
-			if (minid != vertexData.getMinF()) {
-				vertexData.updateMinF(minid);
-				propagate = true;
+			/*
+			 * Neighbors in later intervals run in this same iteration and
+			 * would miss the label, so every live vertex reads its in-edges
+			 * on the next iteration instead.
+			 */
+			context.getScheduler().addTask(id);
+			return;
+		}
+
+		int minF = states.getMinF(id);
+		int minid = minF;
+		for (int i = 0; i < vertex.numInEdges(); i++) {
+			if (!vertex.inEdge(i).getValue().deleted()) {
+				minid = Math.min(minid, vertex.inEdge(i).getValue().getMinF());
 			}
 		}
-		vertex.setValue(vertexData);
 
-		if (propagate) {
+		if (minid < minF) {
+			states.setMinF(id, minid);
+
 			for (int i = 0; i < vertex.numOutEdges(); i++) {
 				EdgeValue edgeData = vertex.outEdge(i).getValue();
 
 				if (!edgeData.deleted()) {
-					edgeData.updateMinF(vertexData.getMinF());
+					edgeData.updateMinF(minid);
 					vertex.outEdge(i).setValue(edgeData);
 					context.getScheduler().addTask(
 							vertex.outEdge(i).getVertexId());
@@ -384,18 +295,17 @@ class SCCForward implements GraphChiProgram<VertexValue, EdgeValue> {
 
 	@Override
 	public void beginIteration(GraphChiContext ctx) {
-
+		job.beginIteration(ctx);
 	}
 
 	@Override
 	public void endIteration(GraphChiContext ctx) {
-		SCC.firstIteration = false;
-
+		job.endIteration(ctx, "forward");
 	}
 
 	@Override
 	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
-
+		job.beginInterval();
 	}
 
 	@Override
@@ -405,8 +315,7 @@ class SCCForward implements GraphChiProgram<VertexValue, EdgeValue> {
 
 	@Override
 	public void beginSubInterval(GraphChiContext ctx, VertexInterval interval) {
-		// TODO Auto-generated method stub
-
+		job.beginSubInterval();
 	}
 
 	@Override
@@ -417,13 +326,16 @@ class SCCForward implements GraphChiProgram<VertexValue, EdgeValue> {
 
 }
 
+/**
+ * Edge record of the SCC programs. The endpoints are not stored: GraphChi
+ * already knows them from the shard layout (ChiEdge.getVertexId() and
+ * ChiVertex.getId()).
+ */
 class EdgeValue implements Serializable {
 	private static final long serialVersionUID = -6638107748426892170L;
 	public static final int DELETED = -1;
 	public int minF = Integer.MAX_VALUE;
 	public int minB = Integer.MAX_VALUE;
-	public int from = -1;
-	public int to = -1;
 
 	public void updateMinF(int value) {
 		if (value < minF) {
@@ -446,7 +358,8 @@ class EdgeValue implements Serializable {
 	}
 
 	public boolean deleted() {
-		return (minF == DELETED);
+		// Vertex ids are never negative, so the sign bit marks deletion
+		return (minF < 0);
 	}
 
 	@Override
@@ -457,49 +370,45 @@ class EdgeValue implements Serializable {
 
 class EdgeValueConverter implements BytesToValueConverter<EdgeValue> {
 
+	private final ThreadLocal<EdgeValue> holder;
+
+	public EdgeValueConverter() {
+		this(false);
+	}
+
+	/**
+	 * @param reuseValues
+	 *            if true, getValue() fills one EdgeValue per thread instead of
+	 *            allocating a new one. The returned object is only valid until
+	 *            the next getValue() call on the same thread.
+	 */
+	public EdgeValueConverter(boolean reuseValues) {
+		holder = (reuseValues ? new ThreadLocal<EdgeValue>() {
+			@Override
+			protected EdgeValue initialValue() {
+				return new EdgeValue();
+			}
+		} : null);
+	}
+
 	@Override
 	public int sizeOf() {
-		return 16;
+		return 8;
 	}
 
 	@Override
 	public EdgeValue getValue(byte[] array) {
-		IntConverter intConverter = new IntConverter();
-
-		EdgeValue val = new EdgeValue();
-		val.minF = intConverter.getValue(ArrayUtils.subarray(array, 0, 4));
-		val.minB = intConverter.getValue(ArrayUtils.subarray(array, 4, 8));
-		val.from = intConverter.getValue(ArrayUtils.subarray(array, 8, 12));
-		val.to = intConverter.getValue(ArrayUtils.subarray(array, 12, 16));
+		EdgeValue val = (holder != null ? holder.get() : new EdgeValue());
+		val.minF = ByteUtil.getInt(array, 0);
+		val.minB = ByteUtil.getInt(array, 4);
 
 		return val;
 	}
 
 	@Override
 	public void setValue(byte[] array, EdgeValue val) {
-		IntConverter intConverter = new IntConverter();
-		intConverter.setValue(array, val.minF);
-
-		byte[] minByte = new byte[4];
-		intConverter.setValue(minByte, val.minB);
-		array[4] = minByte[0];
-		array[5] = minByte[1];
-		array[6] = minByte[2];
-		array[7] = minByte[3];
-
-		byte[] fromByte = new byte[4];
-		intConverter.setValue(fromByte, val.from);
-		array[8] = fromByte[0];
-		array[9] = fromByte[1];
-		array[10] = fromByte[2];
-		array[11] = fromByte[3];
-
-		byte[] toByte = new byte[4];
-		intConverter.setValue(toByte, val.to);
-		array[12] = toByte[0];
-		array[13] = toByte[1];
-		array[14] = toByte[2];
-		array[15] = toByte[3];
+		ByteUtil.setInt(array, 0, val.minF);
+		ByteUtil.setInt(array, 4, val.minB);
 	}
 
 }
@@ -562,74 +471,252 @@ class VertexValue {
 	}
 }
 
+/**
+ * The SCC vertex state as one record. The confirmed flag is kept in the top
+ * bit of the first word (vertex ids are never negative): color, minF, minB
+ * in 12 bytes, or minF, minB in 8 bytes when color is not stored. SCCJob
+ * keeps the state in a {@link VertexStateStore} with the same layout in
+ * columns.
+ */
 class VertexInfoConverter implements BytesToValueConverter<VertexValue> {
 
+	private static final int CONFIRMED = 0x80000000;
+
+	private final ThreadLocal<VertexValue> holder;
+	private final boolean storeColor;
+
+	public VertexInfoConverter() {
+		this(false);
+	}
+
+	public VertexInfoConverter(boolean reuseValues) {
+		this(reuseValues, true);
+	}
+
+	/**
+	 * @param reuseValues
+	 *            if true, getValue() fills one VertexValue per thread instead
+	 *            of allocating a new one. The returned object is only valid
+	 *            until the next getValue() call on the same thread.
+	 * @param storeColor
+	 *            if false, color is not stored. A confirmed vertex reads back
+	 *            its minF as color, which is what both phases confirm it with.
+	 */
+	public VertexInfoConverter(boolean reuseValues, boolean storeColor) {
+		holder = (reuseValues ? new ThreadLocal<VertexValue>() {
+			@Override
+			protected VertexValue initialValue() {
+				return new VertexValue();
+			}
+		} : null);
+		this.storeColor = storeColor;
+	}
+
 	@Override
 	public int sizeOf() {
-		return 16;
+		return (storeColor ? 12 : 8);
 	}
 
 	@Override
 	public VertexValue getValue(byte[] array) {
-		IntConverter intConverter = new IntConverter();
+		VertexValue info = (holder != null ? holder.get() : new VertexValue());
+		int word = ByteUtil.getInt(array, 0);
+		info.confirmed = ((word & CONFIRMED) != 0);
+
+		if (storeColor) {
+			info.color = (word & ~CONFIRMED);
+			info.setMinF(ByteUtil.getInt(array, 4));
+			info.setMinB(ByteUtil.getInt(array, 8));
+		} else {
+			info.setMinF(word & ~CONFIRMED);
+			info.setMinB(ByteUtil.getInt(array, 4));
+			info.color = (info.confirmed ? info.getMinF() : 0);
+		}
 
-		byte[] colorByte = ArrayUtils.subarray(array, 0, 4);
-		int color = intConverter.getValue(colorByte);
+		return info;
+	}
 
-		byte[] confirmedByte = ArrayUtils.subarray(array, 4, 8);
-		boolean confirmed = (intConverter.getValue(confirmedByte) == 0) ? false
-				: true;
+	@Override
+	public void setValue(byte[] array, VertexValue val) {
+		int confirmed = (val.confirmed ? CONFIRMED : 0);
+
+		if (storeColor) {
+			ByteUtil.setInt(array, 0, val.color | confirmed);
+			ByteUtil.setInt(array, 4, val.getMinF());
+			ByteUtil.setInt(array, 8, val.getMinB());
+		} else {
+			ByteUtil.setInt(array, 0, val.getMinF() | confirmed);
+			ByteUtil.setInt(array, 4, val.getMinB());
+		}
+	}
 
-		byte[] minFByte = ArrayUtils.subarray(array, 8, 12);
-		int minF = intConverter.getValue(minFByte);
+}
 
-		byte[] minBByte = ArrayUtils.subarray(array, 12, 16);
-		int minB = intConverter.getValue(minBByte);
+/**
+ * Vertex values of the SCC programs in the engine: none, since the state is
+ * in the {@link VertexStateStore} of the job. The engine moves no vertex
+ * data, and the vertex data file stays empty.
+ */
+class EmptyVertexConverter implements BytesToValueConverter<VertexValue> {
 
-		VertexValue info = new VertexValue(color, confirmed);
-		info.setMinF(minF);
-		info.setMinB(minB);
+	@Override
+	public int sizeOf() {
+		return 0;
+	}
 
-		return info;
+	@Override
+	public VertexValue getValue(byte[] array) {
+		return null;
 	}
 
 	@Override
 	public void setValue(byte[] array, VertexValue val) {
-		IntConverter intConverter = new IntConverter();
+	}
+
+}
+
+/**
+ * Vertices the next SCC program run still has to visit: those not confirmed
+ * yet, and those colored by the backward pass whose in-edges SCCTrim has not
+ * removed. A bit is cleared by the update thread that retires the vertex.
+ */
+class PendingVertices {
+	private final AtomicLongArray words;
+
+	public PendingVertices(int numVertices) {
+		words = new AtomicLongArray((numVertices + 63) >>> 6);
+		for (int w = 0; w < numVertices >>> 6; w++) {
+			words.set(w, -1L);
+		}
+		if ((numVertices & 63) != 0) {
+			words.set(numVertices >>> 6, (1L << (numVertices & 63)) - 1);
+		}
+	}
+
+	public void clear(int vertexId) {
+		int w = vertexId >>> 6;
+		long mask = 1L << (vertexId & 63);
+		long old;
+		do {
+			old = words.get(w);
+		} while ((old & mask) != 0
+				&& !words.compareAndSet(w, old, old & ~mask));
+	}
 
-		byte[] colorByte = new byte[4];
-		intConverter.setValue(colorByte, val.color);
+	/**
+	 * Replaces the tasks of the scheduler with the pending vertices.
+	 *
+	 * @return number of vertices scheduled
+	 */
+	public int schedule(Scheduler scheduler) {
+		scheduler.removeAllTasks();
+		int scheduled = 0;
+		for (int w = 0; w < words.length(); w++) {
+			long bits = words.get(w);
+			while (bits != 0) {
+				scheduler.addTask((w << 6) + Long.numberOfTrailingZeros(bits));
+				scheduled++;
+				bits &= bits - 1;
+			}
+		}
+		return scheduled;
+	}
+}
 
-		byte[] confirmedByte = new byte[4];
-		intConverter.setValue(confirmedByte, val.confirmed ? 1 : 0);
+/**
+ * Vertices confirmed during a sub-interval, written to the result sink and
+ * counted in the component statistics when the sub-interval ends. A vertex
+ * is confirmed once, with its final color, so the results need no separate
+ * pass over the graph.
+ */
+class IntervalResults {
+	private static final int NONE = -1;
+	// Trimmed vertices are their own component: color == vertex id
+	private static final int TRIMMED = -2;
+
+	private final ResultSink sink;
+	private final ComponentStats stats;
+	private final VertexIdTranslate translator;
+	private int[] colors = new int[0];
+	private int firstVertex;
+	private int numVertices;
+	private final AtomicInteger count = new AtomicInteger();
+
+	public IntervalResults(ResultSink sink, ComponentStats stats,
+			VertexIdTranslate translator) {
+		this.sink = sink;
+		this.stats = stats;
+		this.translator = translator;
+	}
+
+	public void beginSubInterval(VertexInterval interval) {
+		firstVertex = interval.getFirstVertex();
+		numVertices = interval.getLastVertex() - firstVertex + 1;
+		if (colors.length < numVertices) {
+			colors = new int[numVertices];
+			Arrays.fill(colors, NONE);
+		}
+	}
 
-		byte[] minFByte = new byte[4];
-		intConverter.setValue(minFByte, val.getMinF());
+	/**
+	 * Called from the update threads; each vertex has its own slot.
+	 */
+	public void confirmed(int vertexId, int color) {
+		colors[vertexId - firstVertex] = color;
+		count.incrementAndGet();
+	}
 
-		byte[] minBByte = new byte[4];
-		intConverter.setValue(minBByte, val.getMinB());
+	public void trimmed(int vertexId) {
+		colors[vertexId - firstVertex] = TRIMMED;
+		count.incrementAndGet();
+	}
 
-		array[0] = colorByte[0];
-		array[1] = colorByte[1];
-		array[2] = colorByte[2];
-		array[3] = colorByte[3];
+	public void endSubInterval() {
+		if (count.get() == 0) {
+			return;
+		}
 
-		array[4] = confirmedByte[0];
-		array[5] = confirmedByte[1];
-		array[6] = confirmedByte[2];
-		array[7] = confirmedByte[3];
+		try {
+			for (int i = 0; i < numVertices; i++) {
+				int color = colors[i];
+				if (color == NONE) {
+					continue;
+				}
 
-		array[8] = minFByte[0];
-		array[9] = minFByte[1];
-		array[10] = minFByte[2];
-		array[11] = minFByte[3];
+				if (color == TRIMMED) {
+					color = firstVertex + i;
+					stats.addTrimmed();
+				} else {
+					stats.add(color);
+				}
+				sink.write(translator.backward(firstVertex + i), color);
+				colors[i] = NONE;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		count.set(0);
+	}
+}
 
-		array[12] = minBByte[0];
-		array[13] = minBByte[1];
-		array[14] = minBByte[2];
-		array[15] = minBByte[3];
+/**
+ * Little-endian int access at an offset, same byte order as
+ * {@link IntConverter}.
+ */
+class ByteUtil {
+	public static int getInt(byte[] array, int offset) {
+		return ((array[offset + 3] & 0xff) << 24)
+				| ((array[offset + 2] & 0xff) << 16)
+				| ((array[offset + 1] & 0xff) << 8)
+				| (array[offset] & 0xff);
 	}
 
+	public static void setInt(byte[] array, int offset, int x) {
+		array[offset] = (byte) x;
+		array[offset + 1] = (byte) (x >>> 8);
+		array[offset + 2] = (byte) (x >>> 16);
+		array[offset + 3] = (byte) (x >>> 24);
+	}
 }
 
 class VertexUtil {
@@ -642,21 +729,63 @@ class VertexUtil {
 
 	public static void resetAllInEdges(ChiVertex<VertexValue, EdgeValue> vertex) {
 		for (int i = 0; i < vertex.numInEdges(); i++) {
-			ChiEdge<EdgeValue> e = vertex.inEdge(i);
-			EdgeValue val = new EdgeValue();
-			val.from = e.getVertexId();
-			val.to = vertex.getId();
-			e.setValue(val);
+			vertex.inEdge(i).setValue(new EdgeValue());
 		}
 	}
 
 	public static void resetAllOutEdges(ChiVertex<VertexValue, EdgeValue> vertex) {
+		for (int i = 0; i < vertex.numOutEdges(); i++) {
+			vertex.outEdge(i).setValue(new EdgeValue());
+		}
+	}
+
+	public static int numLiveInEdges(ChiVertex<VertexValue, EdgeValue> vertex) {
+		int live = 0;
+		for (int i = 0; i < vertex.numInEdges(); i++) {
+			if (!vertex.inEdge(i).getValue().deleted()) {
+				live++;
+			}
+		}
+		return live;
+	}
+
+	public static int numLiveOutEdges(
+			ChiVertex<VertexValue, EdgeValue> vertex) {
+		int live = 0;
+		for (int i = 0; i < vertex.numOutEdges(); i++) {
+			if (!vertex.outEdge(i).getValue().deleted()) {
+				live++;
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Removes the live edges of the vertex and schedules the vertex at the
+	 * other end of each of them.
+	 */
+	public static void removeLiveEdges(
+			ChiVertex<VertexValue, EdgeValue> vertex, Scheduler scheduler) {
+		for (int i = 0; i < vertex.numInEdges(); i++) {
+			ChiEdge<EdgeValue> e = vertex.inEdge(i);
+			EdgeValue val = e.getValue();
+			if (!val.deleted()) {
+				val.minF = EdgeValue.DELETED;
+				val.minB = EdgeValue.DELETED;
+				e.setValue(val);
+				scheduler.addTask(e.getVertexId());
+			}
+		}
+
 		for (int i = 0; i < vertex.numOutEdges(); i++) {
 			ChiEdge<EdgeValue> e = vertex.outEdge(i);
-			EdgeValue val = new EdgeValue();
-			val.from = vertex.getId();
-			val.to = e.getVertexId();
-			e.setValue(val);
+			EdgeValue val = e.getValue();
+			if (!val.deleted()) {
+				val.minF = EdgeValue.DELETED;
+				val.minB = EdgeValue.DELETED;
+				e.setValue(val);
+				scheduler.addTask(e.getVertexId());
+			}
 		}
 	}
 
@@ -0,0 +1,456 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import demo.InMemoryEngine;
+import demo.ParallelSharder;
+import demo.ShardCache;
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.GraphChiContext;
+import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+import edu.cmu.graphchi.preprocessing.EdgeProcessor;
+import edu.cmu.graphchi.preprocessing.FastSharder;
+
+/**
+ * One SCC computation on one graph. The engine, the round flags, the
+ * statistics and the result sink all belong to the job, so independent jobs
+ * can run side by side in the same JVM (see {@link SCCJobRunner}). Engine
+ * runs of different jobs take turns, each using all update threads.
+ */
+public class SCCJob implements Callable<SCCJob> {
+
+	private static Logger logger = ChiLogger.getLogger("SCC");
+
+	/*
+	 * GraphChi keeps the block manager and the converters of the running
+	 * engine in static fields of ChiVertex, so only one engine in the JVM may
+	 * execute updates at a time. Sharding and the work between runs overlap.
+	 */
+	private static final Object engineLock = new Object();
+
+	private final String baseFilename;
+	private final int nShards;
+	private final String fileType;
+	private final ResultSink sink;
+	private boolean storeColor = true;
+	private String summaryFilename = null;
+	private int topK = 10;
+	private IterationTimer timer = null;
+	private String algorithm = "propagation";
+	private long memoryBudget = -1;
+	private String engineMode = null;
+	private boolean keepStateFile = false;
+	private File stateFile = null;
+
+	private GraphChiEngine<VertexValue, EdgeValue> engine = null;
+
+	// Set when SCC shares its engine passes with other programs
+	private CompositeProgram composite = null;
+	private CompositeProgram.Slot<VertexValue, EdgeValue> slot;
+	private GraphChiEngine<byte[], byte[]> compositeEngine = null;
+
+	// 프로그램에서 직접 사용
+	int superstep = 0;
+	boolean firstIteration = true;
+	boolean remainingVertices = true;
+
+	IntervalResults results;
+	PendingVertices pending;
+	VertexStateStore states;
+	final ComponentStats stats = new ComponentStats();
+
+	// 라운드별 통계
+	final AtomicInteger trimmedVertices = new AtomicInteger();
+	final AtomicInteger residualVertices = new AtomicInteger();
+	final AtomicInteger coloredVertices = new AtomicInteger();
+	private int intervals, skippedIntervals;
+
+	// 현재 iteration의 interval 수 (engine 스레드에서만 사용)
+	private int iterationIntervals, visitedIntervals;
+	private boolean intervalVisited;
+
+	/**
+	 * @param baseFilename
+	 *            input graph
+	 * @param nShards
+	 *            number of shards
+	 * @param fileType
+	 *            edgelist, adjlist or one of the binary edge lists of
+	 *            {@link ParallelSharder}
+	 * @param sink
+	 *            receives the component of each vertex; closed when the job
+	 *            ends
+	 */
+	public SCCJob(String baseFilename, int nShards, String fileType,
+			ResultSink sink) {
+		this.baseFilename = baseFilename;
+		this.nShards = nShards;
+		this.fileType = fileType;
+		this.sink = sink;
+	}
+
+	/**
+	 * If false, the vertex state is kept without a color column.
+	 */
+	public void setStoreColor(boolean storeColor) {
+		this.storeColor = storeColor;
+	}
+
+	/**
+	 * If true, the vertex state file graph.N.sccstate is left next to the
+	 * graph when the job ends; by default it is deleted.
+	 */
+	public void setKeepStateFile(boolean keepStateFile) {
+		this.keepStateFile = keepStateFile;
+	}
+
+	/**
+	 * Writes the component statistics as JSON to this file when the job
+	 * ends.
+	 */
+	public void setSummaryFile(String summaryFilename) {
+		this.summaryFilename = summaryFilename;
+	}
+
+	/**
+	 * Number of largest components listed in the summary.
+	 */
+	public void setTopK(int topK) {
+		this.topK = topK;
+	}
+
+	/**
+	 * Records the time of every engine iteration of the job.
+	 */
+	public void setIterationTimer(IterationTimer timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * How the components are found: "propagation" runs the GraphChi programs
+	 * in rounds, "fwbw" runs {@link FwBwSCC} on the graph in memory, and
+	 * "auto" takes fwbw if the graph fits in the memory budget. Both write
+	 * the same components. With a composite, propagation is always used.
+	 */
+	public void setAlgorithm(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Bytes the job may keep in memory for the graph: the in-memory engine or
+	 * the forward-backward adjacency. Default
+	 * {@link InMemoryEngine#defaultMemoryBudget()}; jobs running at the same
+	 * time should each get their share.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	private long getMemoryBudget() {
+		return (memoryBudget < 0 ? InMemoryEngine.defaultMemoryBudget()
+				: memoryBudget);
+	}
+
+	/**
+	 * Runs the SCC programs in the engine passes of this composite, next to
+	 * the programs started on it. Those still running when SCC ends are run
+	 * to the end before the job returns.
+	 */
+	public void setComposite(CompositeProgram composite) {
+		this.composite = composite;
+	}
+
+	public ComponentStats getStats() {
+		return stats;
+	}
+
+	public String getBaseFilename() {
+		return baseFilename;
+	}
+
+	public int getSuperstep() {
+		return superstep;
+	}
+
+	/**
+	 * @return "fwbw" if the components were found with {@link FwBwSCC},
+	 *         otherwise "memory" or "disk" for the engine the programs ran
+	 *         on; null before the job runs
+	 */
+	public String getEngineMode() {
+		return engineMode;
+	}
+
+	/**
+	 * Initialize the sharder-program.
+	 *
+	 * @param graphName
+	 * @param numShards
+	 * @return
+	 * @throws java.io.IOException
+	 */
+	protected static FastSharder<VertexValue, EdgeValue> createSharder(
+			String graphName, int numShards) throws IOException {
+		return new FastSharder<VertexValue, EdgeValue>(graphName, numShards,
+				null, new EdgeProcessor<EdgeValue>() {
+					public EdgeValue receiveEdge(int from, int to, String token) {
+						return new EdgeValue();
+					}
+				}, new EmptyVertexConverter(), new EdgeValueConverter());
+	}
+
+	@Override
+	public SCCJob call() throws Exception {
+		run();
+		return this;
+	}
+
+	public void run() throws Exception {
+		try {
+			compute();
+		} finally {
+			// The mappings are released once the store is collected; the
+			// file is gone as soon as they are
+			states = null;
+			if (stateFile != null && !keepStateFile && !stateFile.delete()) {
+				logger.warning("Could not delete " + stateFile);
+			}
+			sink.close();
+		}
+	}
+
+	private void compute() throws Exception {
+		/* Create shards and the engine */
+		int numVertices;
+		VertexIdTranslate translate;
+		// The vertex state is in the store. The SCC programs never hold two
+		// edge values at once, so one value object per thread can be reused
+		EmptyVertexConverter vertexConverter = new EmptyVertexConverter();
+		EdgeValueConverter edgeConverter = new EdgeValueConverter(true);
+		if (composite == null) {
+			shard(createSharder(baseFilename, nShards),
+					new EdgeValueConverter(), new EdgeValue());
+			if (useForwardBackward()) {
+				engineMode = "fwbw";
+				computeForwardBackward();
+				return;
+			}
+			engine = InMemoryEngine.create(baseFilename, nShards,
+					vertexConverter, edgeConverter, getMemoryBudget());
+			engine.setEnableScheduler(true);
+			engineMode = (engine instanceof InMemoryEngine ? "memory" : "disk");
+			numVertices = engine.numVertices();
+			translate = engine.getVertexIdTranslate();
+		} else {
+			slot = composite.addSlot(vertexConverter, edgeConverter);
+			BytesToValueConverter<byte[]> records = composite
+					.getEdgeConverter();
+			shard(composite.createSharder(baseFilename, nShards), records,
+					new byte[records.sizeOf()]);
+			compositeEngine = composite.createEngine(baseFilename, nShards,
+					getMemoryBudget());
+			engineMode = (compositeEngine instanceof InMemoryEngine ? "memory"
+					: "disk");
+			numVertices = compositeEngine.numVertices();
+			translate = compositeEngine.getVertexIdTranslate();
+		}
+		results = new IntervalResults(sink, stats, translate);
+		pending = new PendingVertices(numVertices);
+		stateFile = new File(baseFilename + "." + nShards + ".sccstate");
+		states = new VertexStateStore(stateFile, numVertices, storeColor);
+
+		/*
+		 * Each round first peels sources and sinks off the residual graph
+		 * (vertices not yet confirmed), colors what is left forward, then
+		 * confirms every vertex that reaches its color leader backward.
+		 * Rounds repeat until the forward pass finds no live vertex.
+		 */
+		int confirmedTotal = 0;
+		long startTime = System.currentTimeMillis();
+
+		while (remainingVertices) {
+			superstep++;
+			remainingVertices = false;
+			trimmedVertices.set(0);
+			residualVertices.set(0);
+			coloredVertices.set(0);
+			intervals = 0;
+			skippedIntervals = 0;
+
+			// Trim
+			long t0 = System.currentTimeMillis();
+			runProgram(new SCCTrim(this), 10000);
+
+			// Forward, unless trimming confirmed every vertex left
+			long tf = System.currentTimeMillis();
+			if (confirmedTotal + trimmedVertices.get() < numVertices) {
+				runProgram(new SCCForward(this), 10000);
+			}
+
+			// Backward
+			long t1 = System.currentTimeMillis();
+			if (remainingVertices) {
+				runProgram(new SCCBackward(this), 10000);
+			}
+			long t2 = System.currentTimeMillis();
+
+			int confirmed = trimmedVertices.get() + coloredVertices.get();
+			confirmedTotal += confirmed;
+			logger.info(String.format(
+					"%s round %d: trim %.3fs, forward %.3fs, backward %.3fs, "
+							+ "confirmed %d (trimmed %d, colored %d of %d live), "
+							+ "remaining %d / %d, skipped %d of %d intervals",
+					baseFilename, superstep, (tf - t0) * 0.001,
+					(t1 - tf) * 0.001, (t2 - t1) * 0.001, confirmed,
+					trimmedVertices.get(), coloredVertices.get(),
+					residualVertices.get(), numVertices - confirmedTotal,
+					numVertices, skippedIntervals, intervals));
+
+			// Nothing left for another trim sweep
+			if (confirmedTotal >= numVertices) {
+				remainingVertices = false;
+			}
+		}
+		logger.info(String.format("%s: SCC finished in %d rounds, %.3fs",
+				baseFilename, superstep,
+				(System.currentTimeMillis() - startTime) * 0.001));
+
+		if (composite != null) {
+			// Programs started next to SCC
+			synchronized (engineLock) {
+				composite.run(compositeEngine);
+			}
+		}
+
+		writeSummary();
+	}
+
+	private boolean useForwardBackward() throws IOException {
+		if ("fwbw".equals(algorithm)) {
+			return true;
+		}
+		if (!"auto".equals(algorithm)) {
+			return false;
+		}
+		long estimate = FwBwSCC.estimateMemory(baseFilename, nShards);
+		long budget = getMemoryBudget();
+		logger.info(String.format(
+				"%s: about %d MB for forward-backward, budget %d MB",
+				baseFilename, estimate >> 20, budget >> 20));
+		return estimate <= budget;
+	}
+
+	/**
+	 * Finds the components with {@link FwBwSCC}; the GraphChi engine is not
+	 * used, so the engine lock is not taken.
+	 */
+	private void computeForwardBackward() throws IOException {
+		File translateFile = new File(ChiFilenames.getVertexTranslateDefFile(
+				baseFilename, nShards));
+		VertexIdTranslate translate = (translateFile.exists()
+				? VertexIdTranslate.fromFile(translateFile)
+				: VertexIdTranslate.identity());
+		long startTime = System.currentTimeMillis();
+		superstep = 1;
+		new FwBwSCC(baseFilename, nShards).run(sink, stats, translate);
+		logger.info(String.format("%s: SCC finished in %.3fs", baseFilename,
+				(System.currentTimeMillis() - startTime) * 0.001));
+		writeSummary();
+	}
+
+	private void writeSummary() throws IOException {
+		int[][] largest = stats.getLargest(1);
+		logger.info(String.format(
+				"%s: %d components, largest %d, singletons %d", baseFilename,
+				stats.getNumComponents(), (largest.length > 0 ? largest[0][1]
+						: 1), stats.getNumSingletons()));
+
+		if (summaryFilename != null) {
+			Writer out = new BufferedWriter(new FileWriter(summaryFilename));
+			try {
+				stats.writeJson(out, baseFilename, superstep, topK);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	private <V, E> void shard(FastSharder<V, E> sharder,
+			BytesToValueConverter<E> edgeConverter, E initialValue)
+			throws IOException {
+		if (baseFilename.equals("pipein")) { // Allow piping graph in
+			sharder.shard(System.in, fileType);
+		} else {
+			ShardCache cache = new ShardCache(baseFilename, nShards, fileType);
+			if (!cache.prepare(edgeConverter, initialValue)) {
+				ParallelSharder.shard(sharder, new File(baseFilename), fileType);
+				cache.sharded(edgeConverter);
+			}
+		}
+	}
+
+	/**
+	 * Called by the SCC programs when an iteration begins. engine.run()
+	 * schedules every vertex again, so the first iteration of each run would
+	 * load every interval, also those left with confirmed vertices only.
+	 * Scheduling just the pending vertices lets the engine skip them.
+	 */
+	void beginIteration(GraphChiContext ctx) {
+		iterationIntervals = 0;
+		visitedIntervals = 0;
+		if (ctx.getIteration() == 0 && !firstIteration) {
+			pending.schedule(ctx.getScheduler());
+		}
+	}
+
+	void beginInterval() {
+		iterationIntervals++;
+		intervalVisited = false;
+	}
+
+	/**
+	 * The engine begins a sub-interval only for a window with a scheduled
+	 * vertex; an interval without one is never loaded.
+	 */
+	void beginSubInterval() {
+		if (!intervalVisited) {
+			intervalVisited = true;
+			visitedIntervals++;
+		}
+	}
+
+	void endIteration(GraphChiContext ctx, String phase) {
+		int skipped = iterationIntervals - visitedIntervals;
+		intervals += iterationIntervals;
+		skippedIntervals += skipped;
+		logger.info(String.format(
+				"%s round %d %s iteration %d: skipped %d of %d intervals",
+				baseFilename, superstep, phase, ctx.getIteration(), skipped,
+				iterationIntervals));
+	}
+
+	private void runProgram(GraphChiProgram<VertexValue, EdgeValue> program,
+			int niters) throws IOException {
+		if (timer != null) {
+			program = timer.wrap(program);
+		}
+		synchronized (engineLock) {
+			if (composite != null) {
+				composite.run(compositeEngine,
+						composite.start(slot, program, niters, true));
+			} else {
+				engine.run(program, niters);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import demo.InMemoryEngine;
+import edu.cmu.graphchi.ChiLogger;
+
+/**
+ * Runs independent SCC jobs concurrently on one thread pool, so that many
+ * small graphs share a single JVM.
+ */
+public class SCCJobRunner {
+
+	private static Logger logger = ChiLogger.getLogger("SCC");
+
+	private final int nThreads;
+	private long memoryBudget = InMemoryEngine.defaultMemoryBudget();
+
+	/**
+	 * @param nThreads
+	 *            number of jobs running at the same time. Each engine still
+	 *            uses its own update threads (-Dnum_threads), and engine runs
+	 *            of different jobs do not overlap.
+	 */
+	public SCCJobRunner(int nThreads) {
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Bytes all running jobs together may keep in memory for their graphs;
+	 * default {@link InMemoryEngine#defaultMemoryBudget()}.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Runs all jobs and waits for them. A failing job is logged and does not
+	 * stop the others. Each job gets an equal share of the memory budget, as
+	 * many run at the same time and each keeps its graph in memory for the
+	 * whole job.
+	 *
+	 * @return the jobs that finished successfully
+	 */
+	public List<SCCJob> runAll(List<SCCJob> jobs) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		List<Future<SCCJob>> futures = new ArrayList<Future<SCCJob>>();
+		List<SCCJob> finished = new ArrayList<SCCJob>();
+
+		long share = memoryBudget / Math.max(1, Math.min(nThreads, jobs
+				.size()));
+		logger.info(String.format("Memory budget of each SCC job: %d MB",
+				share >> 20));
+
+		try {
+			for (SCCJob job : jobs) {
+				job.setMemoryBudget(share);
+				futures.add(pool.submit(job));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					finished.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					logger.severe(String.format("%s: SCC failed: %s", jobs
+							.get(i).getBaseFilename(), e.getCause()));
+					e.getCause().printStackTrace();
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		return finished;
+	}
+
+	/**
+	 * Usage: java SCCJobRunner num-jobs num-shards filetype(edgelist|adjlist)
+	 * graph-name [graph-name ...] The components of each graph are written to
+	 * graph-name.scc, or to graph-name.scc.bin with -Dscc.output=binary, and
+	 * their statistics to graph-name.scc.json. -Dscc.algorithm chooses the
+	 * algorithm as for {@link SCC}.
+	 */
+	public static void main(String[] args) throws Exception {
+		int nThreads = Integer.parseInt(args[0]);
+		int nShards = Integer.parseInt(args[1]);
+		String fileType = args[2];
+		boolean storeColor = !Boolean.getBoolean("scc.dropcolor");
+		boolean binary = "binary".equals(System.getProperty("scc.output"));
+
+		List<SCCJob> jobs = new ArrayList<SCCJob>();
+		for (int i = 3; i < args.length; i++) {
+			ResultSink sink = (binary ? new BinaryResultSink(args[i]
+					+ ".scc.bin") : new TextResultSink(args[i] + ".scc"));
+			SCCJob job = new SCCJob(args[i], nShards, fileType, sink);
+			job.setStoreColor(storeColor);
+			job.setSummaryFile(args[i] + ".scc.json");
+			job.setTopK(Integer.getInteger("scc.topk", 10));
+			job.setAlgorithm(System.getProperty("scc.algorithm",
+					"propagation"));
+			jobs.add(job);
+		}
+
+		long startTime = System.currentTimeMillis();
+		List<SCCJob> finished = new SCCJobRunner(nThreads).runAll(jobs);
+		logger.info(String.format("%d of %d SCC jobs finished in %.3fs",
+				finished.size(), jobs.size(),
+				(System.currentTimeMillis() - startTime) * 0.001));
+
+		// A failed engine run leaves its worker threads behind
+		System.exit(finished.size() == jobs.size() ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,83 @@
+import java.io.File;
+import java.util.logging.Logger;
+
+import demo.ConnectedComponents;
+import demo.Pagerank;
+import demo.TopK;
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.datablocks.FloatConverter;
+import edu.cmu.graphchi.datablocks.IntConverter;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+import edu.cmu.graphchi.util.LabelAnalysis;
+
+/**
+ * PageRank, weakly connected components and SCC of one graph in shared
+ * engine passes: the SCC job runs its phases through a
+ * {@link CompositeProgram} that also updates Pagerank and
+ * ConnectedComponents, so each interval is loaded once for all three.
+ */
+public class SharedPassJob {
+
+	private static Logger logger = ChiLogger.getLogger("shared-pass");
+
+	/**
+	 * Usage: java SharedPassJob graph-name num-shards
+	 * filetype(edgelist|adjlist) The components are written like with
+	 * {@link SCC} (output/out.txt, output/summary.json), the weakly connected
+	 * components to graph-name.components like with label propagation in
+	 * ConnectedComponents, and the -Dpagerank.topk (default 20) highest ranks
+	 * after 10 iterations are printed. Label propagation runs at most
+	 * -Dcc.iterations (default 1000) iterations.
+	 */
+	public static void main(String[] args) throws Exception {
+		String baseFilename = args[0];
+		int nShards = Integer.parseInt(args[1]);
+		String fileType = (args.length >= 3 ? args[2] : null);
+
+		CompositeProgram composite = new CompositeProgram();
+		CompositeProgram.Slot<Float, Float> ranks = composite.addSlot(
+				new FloatConverter(), new FloatConverter());
+		CompositeProgram.Slot<Integer, Integer> labels = composite.addSlot(
+				new IntConverter(), new IntConverter());
+
+		int topN = Integer.getInteger("pagerank.topk", 20);
+		Pagerank pagerank = new Pagerank();
+		pagerank.setTopK(topN);
+		composite.start(ranks, pagerank, 10, false);
+		CompositeProgram.Member<Integer, Integer> components = composite
+				.start(labels, new ConnectedComponents(),
+						Integer.getInteger("cc.iterations", 1000), true);
+
+		boolean binary = "binary".equals(System.getProperty("scc.output"));
+		ResultSink sink = (binary ? new BinaryResultSink("output/out.bin")
+				: new TextResultSink("output/out.txt"));
+		SCCJob job = new SCCJob(baseFilename, nShards, fileType, sink);
+		job.setStoreColor(!Boolean.getBoolean("scc.dropcolor"));
+		job.setSummaryFile("output/summary.json");
+		job.setTopK(Integer.getInteger("scc.topk", 10));
+		job.setComposite(composite);
+		job.run();
+
+		/* Output results */
+		File translateFile = new File(ChiFilenames.getVertexTranslateDefFile(
+				baseFilename, nShards));
+		VertexIdTranslate trans = (translateFile.exists() ? VertexIdTranslate
+				.fromFile(translateFile) : VertexIdTranslate.identity());
+		TopK top = pagerank.getTopK();
+		int[] ids = top.getIds();
+		float[] values = top.getValues();
+		for (int i = 0; i < ids.length; i++) {
+			System.out.println((i + 1) + ": " + trans.backward(ids[i]) + " = "
+					+ values[i]);
+		}
+
+		logger.info("Label propagation ran " + components.getIterations()
+				+ " iterations");
+		int numVertices = ChiFilenames.numVertices(baseFilename, nShards);
+		composite.writeVertexData(baseFilename, numVertices, labels);
+		LabelAnalysis.computeLabels(baseFilename, numVertices, trans);
+		logger.info("Finished. See file: " + baseFilename + ".components");
+	}
+
+}
@@ -0,0 +1,78 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes "vertex-id TAB component-id" lines. The ints are formatted by hand
+ * into one large buffer, so no String or boxed Integer is created per vertex.
+ */
+public class TextResultSink implements ResultSink {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	// "-2147483648\t-2147483648\n"
+	private static final int MAX_LINE = 24;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final byte[] bytes = buffer.array();
+	private int pos = 0;
+
+	public TextResultSink(String filename) throws IOException {
+		channel = new FileOutputStream(filename).getChannel();
+	}
+
+	@Override
+	public void write(int vertexId, int componentId) throws IOException {
+		if (BUFFER_SIZE - pos < MAX_LINE) {
+			flush();
+		}
+		pos = appendInt(bytes, pos, vertexId);
+		bytes[pos++] = '\t';
+		pos = appendInt(bytes, pos, componentId);
+		bytes[pos++] = '\n';
+	}
+
+	/**
+	 * Writes the decimal digits of x at pos.
+	 * 
+	 * @return position after the last digit
+	 */
+	static int appendInt(byte[] array, int pos, int x) {
+		long value = x;
+		if (value < 0) {
+			array[pos++] = '-';
+			value = -value;
+		}
+
+		int end = pos + 1;
+		for (long v = value; v >= 10; v /= 10) {
+			end++;
+		}
+
+		int i = end;
+		do {
+			array[--i] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+
+		return end;
+	}
+
+	private void flush() throws IOException {
+		buffer.limit(pos);
+		buffer.position(0);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+		pos = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+}
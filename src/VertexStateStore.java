@@ -0,0 +1,159 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Vertex state of the SCC programs in int columns of a memory-mapped file:
+ * color, minF and minB, or minF and minB when color is not stored. The SCC
+ * programs read and update it by vertex id, so the state stays in place
+ * from the trim pass through forward, backward and the output, and the heap
+ * does not grow with the number of vertices.
+ * <p>
+ * The confirmed flag is the top bit of the first column (vertex ids are
+ * never negative), as in {@link VertexInfoConverter}. A separate bitset
+ * would put 64 vertices in one word, and the update threads of neighboring
+ * vertices would overwrite each other's bits; the top bit belongs to the
+ * vertex alone.
+ * <p>
+ * Each column is mapped in chunks of at most 1 GB. The file is not cleared
+ * when it is opened: {@link SCCTrim} resets every vertex on its first
+ * iteration. Ints are in native byte order.
+ */
+public class VertexStateStore {
+
+	private static final int CONFIRMED = 0x80000000;
+	private static final int DEFAULT_CHUNK_BITS = 28;
+
+	private final int numVertices;
+	private final boolean storeColor;
+	private final int chunkBits;
+	private final int chunkMask;
+	// color (or minF without color) with the confirmed bit, minF, minB
+	private final ByteBuffer[] first;
+	private final ByteBuffer[] minF;
+	private final ByteBuffer[] minB;
+
+	/**
+	 * @param storeColor
+	 *            if false, there is no color column. A confirmed vertex reads
+	 *            back its minF as color, which is what both phases confirm it
+	 *            with.
+	 */
+	public VertexStateStore(File file, int numVertices, boolean storeColor)
+			throws IOException {
+		this(file, numVertices, storeColor, DEFAULT_CHUNK_BITS);
+	}
+
+	/**
+	 * @param chunkBits
+	 *            a column is mapped in chunks of 2^chunkBits ints
+	 */
+	VertexStateStore(File file, int numVertices, boolean storeColor,
+			int chunkBits) throws IOException {
+		this.numVertices = numVertices;
+		this.storeColor = storeColor;
+		this.chunkBits = chunkBits;
+		this.chunkMask = (1 << chunkBits) - 1;
+
+		int columns = (storeColor ? 3 : 2);
+		long columnSize = (long) numVertices * 4;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(columns * columnSize);
+			FileChannel channel = raf.getChannel();
+			first = map(channel, 0);
+			minF = (storeColor ? map(channel, columnSize) : first);
+			minB = map(channel, (columns - 1) * columnSize);
+		} finally {
+			// The mappings stay valid after the file is closed
+			raf.close();
+		}
+	}
+
+	private ByteBuffer[] map(FileChannel channel, long start)
+			throws IOException {
+		int n = (int) (((long) numVertices + chunkMask) >>> chunkBits);
+		ByteBuffer[] chunks = new ByteBuffer[n];
+		for (int i = 0; i < n; i++) {
+			long ints = Math.min(1L << chunkBits, numVertices
+					- ((long) i << chunkBits));
+			chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+					start + ((long) i << chunkBits) * 4, ints * 4).order(
+					ByteOrder.nativeOrder());
+		}
+		return chunks;
+	}
+
+	private int get(ByteBuffer[] column, int vertexId) {
+		return column[vertexId >>> chunkBits]
+				.getInt((vertexId & chunkMask) << 2);
+	}
+
+	private void set(ByteBuffer[] column, int vertexId, int value) {
+		column[vertexId >>> chunkBits].putInt((vertexId & chunkMask) << 2,
+				value);
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public boolean isConfirmed(int vertexId) {
+		return (get(first, vertexId) & CONFIRMED) != 0;
+	}
+
+	public int getColor(int vertexId) {
+		int word = get(first, vertexId);
+		if (storeColor) {
+			return word & ~CONFIRMED;
+		}
+		return ((word & CONFIRMED) != 0 ? word & ~CONFIRMED : 0);
+	}
+
+	public int getMinF(int vertexId) {
+		return get(minF, vertexId) & (storeColor ? -1 : ~CONFIRMED);
+	}
+
+	/**
+	 * Only called on vertices not confirmed yet.
+	 */
+	public void setMinF(int vertexId, int value) {
+		set(minF, vertexId, value);
+	}
+
+	public int getMinB(int vertexId) {
+		return get(minB, vertexId);
+	}
+
+	public void setMinB(int vertexId, int value) {
+		set(minB, vertexId, value);
+	}
+
+	/**
+	 * State of a vertex before the first forward pass: not confirmed, color
+	 * 0, minF its own id and no minB.
+	 */
+	public void reset(int vertexId) {
+		if (storeColor) {
+			set(first, vertexId, 0);
+		}
+		set(minF, vertexId, vertexId);
+		set(minB, vertexId, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Confirms the vertex as a member of the component with this color;
+	 * minF and minB are set to the color as well.
+	 */
+	public void confirm(int vertexId, int color) {
+		if (storeColor) {
+			set(minF, vertexId, color);
+		}
+		set(minB, vertexId, color);
+		set(first, vertexId, color | CONFIRMED);
+	}
+
+}
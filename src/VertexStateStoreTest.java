@@ -0,0 +1,69 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VertexStateStoreTest {
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("scc", ".sccstate");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testStates() throws Exception {
+		for (boolean storeColor : new boolean[] { true, false }) {
+			// Chunks of 16 ints, so 100 vertices span 7 mappings per column
+			VertexStateStore states = new VertexStateStore(file, 100,
+					storeColor, 4);
+			for (int v = 0; v < 100; v++) {
+				states.reset(v);
+			}
+			for (int v = 0; v < 100; v++) {
+				assertFalse(states.isConfirmed(v));
+				assertEquals(v, states.getMinF(v));
+				assertEquals(Integer.MAX_VALUE, states.getMinB(v));
+				assertEquals(0, states.getColor(v));
+			}
+
+			states.setMinF(15, 3);
+			states.setMinB(16, 7);
+			states.confirm(17, 5);
+			states.confirm(99, Integer.MAX_VALUE);
+			assertEquals(3, states.getMinF(15));
+			assertEquals(14, states.getMinF(14));
+			assertEquals(7, states.getMinB(16));
+			assertEquals(16, states.getMinF(16));
+			assertFalse(states.isConfirmed(16));
+			assertTrue(states.isConfirmed(17));
+			assertEquals(5, states.getColor(17));
+			assertEquals(5, states.getMinF(17));
+			assertEquals(5, states.getMinB(17));
+			assertFalse(states.isConfirmed(18));
+			assertTrue(states.isConfirmed(99));
+			assertEquals(Integer.MAX_VALUE, states.getColor(99));
+		}
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		VertexStateStore states = new VertexStateStore(file, 40, true);
+		states.reset(39);
+		states.confirm(39, 12);
+		assertEquals(3 * 40 * 4, file.length());
+
+		// The state is in the file, not in the object
+		states = new VertexStateStore(file, 40, true);
+		assertTrue(states.isConfirmed(39));
+		assertEquals(12, states.getColor(39));
+	}
+}
@@ -11,7 +11,12 @@ import edu.cmu.graphchi.util.LabelAnalysis;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -27,10 +32,79 @@ public class ConnectedComponents implements GraphChiProgram<Integer, Integer> {
 
 	private static Logger logger = ChiLogger.getLogger("connectedcomponents");
 
+	/**
+	 * What one iteration did. Many sub-intervals without updates mean that
+	 * the run mostly loads shards of converged vertices.
+	 */
+	public static class IterationCounts {
+		public final int iteration;
+		/** Vertices updated, i.e. scheduled in the previous iteration */
+		public final int updates;
+		/** Vertices whose label changed */
+		public final int labelChanges;
+		/** Tasks added for neighbors; a vertex may be counted more than once */
+		public final int scheduled;
+		public final int subIntervals;
+		/** Sub-intervals in which no vertex was updated */
+		public final int idleSubIntervals;
+		public final int intervals;
+		/** Intervals without a scheduled vertex, which the engine did not load */
+		public final int skippedIntervals;
+
+		IterationCounts(int iteration, int updates, int labelChanges,
+				int scheduled, int subIntervals, int idleSubIntervals,
+				int intervals, int skippedIntervals) {
+			this.iteration = iteration;
+			this.updates = updates;
+			this.labelChanges = labelChanges;
+			this.scheduled = scheduled;
+			this.subIntervals = subIntervals;
+			this.idleSubIntervals = idleSubIntervals;
+			this.intervals = intervals;
+			this.skippedIntervals = skippedIntervals;
+		}
+	}
+
+	private static final int UPDATES = 0;
+	private static final int LABEL_CHANGES = 1;
+	private static final int SCHEDULED = 2;
+
+	/*
+	 * Counts of the current iteration. Each update thread adds to an array of
+	 * its own, as in Residual, so updates never contend; the arrays are
+	 * summed between sub-intervals.
+	 */
+	private final List<int[]> counters = new ArrayList<int[]>();
+	private final ThreadLocal<int[]> counter = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			int[] c = new int[3];
+			synchronized (counters) {
+				counters.add(c);
+			}
+			return c;
+		}
+	};
+	// Updates of the iteration when the last sub-interval ended
+	private int updatesBefore;
+	private int subIntervals, idleSubIntervals;
+	private int intervals, visitedIntervals;
+	private boolean intervalVisited;
+	private final List<IterationCounts> iterationCounts = new ArrayList<IterationCounts>();
+
+	/**
+	 * @return counts of every finished iteration
+	 */
+	public List<IterationCounts> getIterationCounts() {
+		return iterationCounts;
+	}
+
 	public void update(ChiVertex<Integer, Integer> vertex,
 			GraphChiContext context) {
 		final int iteration = context.getIteration();
 		final int numEdges = vertex.numEdges();
+		final int[] counts = counter.get();
+		counts[UPDATES]++;
 
 		/* On first iteration, each vertex chooses a label equalling its id */
 		if (iteration == 0) {
@@ -38,6 +112,7 @@ public class ConnectedComponents implements GraphChiProgram<Integer, Integer> {
 
 			/* Schedule the vertex itself for execution on next iteration */
 			context.getScheduler().addTask(vertex.getId());
+			counts[SCHEDULED]++;
 		}
 
 		/*
@@ -57,6 +132,9 @@ public class ConnectedComponents implements GraphChiProgram<Integer, Integer> {
 		/**
 		 * Set my new label
 		 */
+		if (curMin != vertex.getValue()) {
+			counts[LABEL_CHANGES]++;
+		}
 		vertex.setValue(curMin);
 		int label = curMin;
 
@@ -69,6 +147,7 @@ public class ConnectedComponents implements GraphChiProgram<Integer, Integer> {
 					vertex.edge(i).setValue(label);
 					context.getScheduler()
 							.addTask(vertex.edge(i).getVertexId());
+					counts[SCHEDULED]++;
 				}
 			}
 		} else {
@@ -79,22 +158,74 @@ public class ConnectedComponents implements GraphChiProgram<Integer, Integer> {
 		}
 	}
 
+	/**
+	 * Sums the counts of all update threads; only called when no update is
+	 * running.
+	 */
+	private int[] sumCounters(boolean reset) {
+		int[] sum = new int[3];
+		synchronized (counters) {
+			for (int[] c : counters) {
+				for (int i = 0; i < sum.length; i++) {
+					sum[i] += c[i];
+					if (reset) {
+						c[i] = 0;
+					}
+				}
+			}
+		}
+		return sum;
+	}
+
 	public void beginIteration(GraphChiContext ctx) {
+		sumCounters(true);
+		updatesBefore = 0;
+		subIntervals = 0;
+		idleSubIntervals = 0;
+		intervals = 0;
+		visitedIntervals = 0;
 	}
 
 	public void endIteration(GraphChiContext ctx) {
+		int[] sum = sumCounters(false);
+		IterationCounts counts = new IterationCounts(ctx.getIteration(),
+				sum[UPDATES], sum[LABEL_CHANGES], sum[SCHEDULED], subIntervals,
+				idleSubIntervals, intervals, intervals - visitedIntervals);
+		iterationCounts.add(counts);
+		logger.info("Iteration " + counts.iteration + ": " + counts.updates
+				+ " updates, " + counts.labelChanges + " label changes, "
+				+ counts.scheduled + " scheduled, " + counts.idleSubIntervals
+				+ " of " + counts.subIntervals + " sub-intervals idle, "
+				+ counts.skippedIntervals + " of " + counts.intervals
+				+ " intervals skipped");
 	}
 
 	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
+		intervals++;
+		intervalVisited = false;
 	}
 
 	public void endInterval(GraphChiContext ctx, VertexInterval interval) {
 	}
 
+	/*
+	 * The engine begins a sub-interval only for a window with a scheduled
+	 * vertex, so an interval without one is never loaded.
+	 */
 	public void beginSubInterval(GraphChiContext ctx, VertexInterval interval) {
+		if (!intervalVisited) {
+			intervalVisited = true;
+			visitedIntervals++;
+		}
 	}
 
 	public void endSubInterval(GraphChiContext ctx, VertexInterval interval) {
+		subIntervals++;
+		int updates = sumCounters(false)[UPDATES];
+		if (updates == updatesBefore) {
+			idleSubIntervals++;
+		}
+		updatesBefore = updates;
 	}
 
 	/**
@@ -105,7 +236,7 @@ public class ConnectedComponents implements GraphChiProgram<Integer, Integer> {
 	 * @return
 	 * @throws java.io.IOException
 	 */
-	protected static FastSharder createSharder(String graphName, int numShards)
+	public static FastSharder createSharder(String graphName, int numShards)
 			throws IOException {
 		return new FastSharder<Integer, Integer>(graphName, numShards,
 				new VertexProcessor<Integer>() {
@@ -123,33 +254,97 @@ public class ConnectedComponents implements GraphChiProgram<Integer, Integer> {
 	 * Usage: java edu.cmu.graphchi.demo.ConnectedComponents graph-name
 	 * num-shards filetype(edgelist|adjlist) For specifying the number of
 	 * shards, 20-50 million edges/shard is often a good configuration.
+	 *
+	 * By default the components are found with {@link UnionFindComponents}
+	 * in one pass over the input file, without shards. Component ids are
+	 * then the smallest vertex id of each component. Label propagation on
+	 * shards runs instead with -Dcc.mode=propagation, for piped input, or
+	 * when the union-find needs more than -Dcc.unionfind.mb (default half of
+	 * the heap). -Dcc.vertices=file also writes "vertex,component" lines in
+	 * union-find mode.
+	 *
+	 * Label propagation runs until no vertex is scheduled, at most
+	 * -Dcc.iterations (default 1000) iterations.
 	 */
 	public static void main(String[] args) throws Exception {
 		String baseFilename = args[0];
 		int nShards = Integer.parseInt(args[1]);
 		String fileType = (args.length >= 3 ? args[2] : null);
 
+		/* Union-find over the edge list, unless it needs too much memory */
+		if (!"propagation".equals(System.getProperty("cc.mode"))
+				&& !baseFilename.equals("pipein")) {
+			long budget = Long.getLong("cc.unionfind.mb", Runtime.getRuntime()
+					.maxMemory() >> 21) << 20;
+			UnionFindComponents components = new UnionFindComponents(
+					Integer.getInteger("num_threads", Runtime.getRuntime()
+							.availableProcessors()), budget);
+			InputStream in = new FileInputStream(baseFilename);
+			boolean fits;
+			try {
+				fits = components.compute(in, fileType);
+			} finally {
+				in.close();
+			}
+
+			if (fits) {
+				OutputStream out = new FileOutputStream(baseFilename
+						+ ".components");
+				int numComponents;
+				try {
+					numComponents = components.writeComponents(out);
+				} finally {
+					out.close();
+				}
+				String vertexFilename = System.getProperty("cc.vertices");
+				if (vertexFilename != null) {
+					out = new FileOutputStream(vertexFilename);
+					try {
+						components.writeVertexComponents(out);
+					} finally {
+						out.close();
+					}
+				}
+				logger.info("Union-find: " + components.getNumVertices()
+						+ " vertices, " + components.getNumEdges() + " edges, "
+						+ numComponents + " components");
+				logger.info("Finished. See file: " + baseFilename
+						+ ".components");
+				return;
+			}
+			logger.info("Falling back to label propagation on shards");
+		}
+
 		/* Create shards */
 		FastSharder sharder = createSharder(baseFilename, nShards);
 		if (baseFilename.equals("pipein")) { // Allow piping graph in
 			sharder.shard(System.in, fileType);
 		} else {
-			if (!new File(ChiFilenames.getFilenameIntervals(baseFilename,
-					nShards)).exists()) {
-				sharder.shard(new FileInputStream(new File(baseFilename)),
-						fileType);
-			} else {
-				logger.info("Found shards -- no need to preprocess");
+			ShardCache cache = new ShardCache(baseFilename, nShards, fileType);
+			if (!cache.prepare(new IntConverter(), 0)) {
+				ParallelSharder.shard(sharder, new File(baseFilename), fileType);
+				cache.sharded(new IntConverter());
 			}
 		}
 
 		/* Run GraphChi ... */
-		GraphChiEngine<Integer, Integer> engine = new GraphChiEngine<Integer, Integer>(
-				baseFilename, nShards);
-		engine.setEdataConverter(new IntConverter());
-		engine.setVertexDataConverter(new IntConverter());
+		GraphChiEngine<Integer, Integer> engine = InMemoryEngine.create(
+				baseFilename, nShards, new IntConverter(), new IntConverter());
 		engine.setEnableScheduler(true);
-		engine.run(new ConnectedComponents(), 5);
+
+		// The run ends when no vertex is scheduled
+		int maxIterations = Integer.getInteger("cc.iterations", 1000);
+		ConnectedComponents program = new ConnectedComponents();
+		engine.run(program, maxIterations);
+
+		List<IterationCounts> counts = program.getIterationCounts();
+		if (counts.size() >= maxIterations
+				&& counts.get(counts.size() - 1).scheduled > 0) {
+			logger.warning("Stopped after " + maxIterations
+					+ " iterations before converging");
+		} else {
+			logger.info("Converged in " + counts.size() + " iterations");
+		}
 
 		logger.info("Ready. Going to output...");
 
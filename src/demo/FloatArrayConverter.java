@@ -0,0 +1,59 @@
+package demo;
+
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+
+/**
+ * Stores a fixed-length float array, one little-endian float per lane.
+ */
+public class FloatArrayConverter implements BytesToValueConverter<float[]> {
+
+	private final int length;
+	private final ThreadLocal<float[]> holder;
+
+	public FloatArrayConverter(int length) {
+		this(length, false);
+	}
+
+	/**
+	 * @param length
+	 *            number of floats per value
+	 * @param reuseValues
+	 *            if true, getValue() fills one array per thread instead of
+	 *            allocating a new one. The returned array is only valid until
+	 *            the next getValue() call on the same thread.
+	 */
+	public FloatArrayConverter(final int length, boolean reuseValues) {
+		this.length = length;
+		holder = (reuseValues ? new ThreadLocal<float[]>() {
+			@Override
+			protected float[] initialValue() {
+				return new float[length];
+			}
+		} : null);
+	}
+
+	public int sizeOf() {
+		return 4 * length;
+	}
+
+	public float[] getValue(byte[] array) {
+		float[] val = (holder != null ? holder.get() : new float[length]);
+		for (int i = 0, j = 0; i < length; i++, j += 4) {
+			val[i] = Float.intBitsToFloat(((array[j + 3] & 0xff) << 24)
+					| ((array[j + 2] & 0xff) << 16)
+					| ((array[j + 1] & 0xff) << 8) | (array[j] & 0xff));
+		}
+		return val;
+	}
+
+	public void setValue(byte[] array, float[] val) {
+		for (int i = 0, j = 0; i < length; i++, j += 4) {
+			int x = Float.floatToIntBits(val[i]);
+			array[j] = (byte) x;
+			array[j + 1] = (byte) (x >>> 8);
+			array[j + 2] = (byte) (x >>> 16);
+			array[j + 3] = (byte) (x >>> 24);
+		}
+	}
+
+}
@@ -0,0 +1,731 @@
+package demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import edu.cmu.graphchi.ChiEdge;
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.ChiVertex;
+import edu.cmu.graphchi.GraphChiContext;
+import edu.cmu.graphchi.GraphChiProgram;
+import edu.cmu.graphchi.Scheduler;
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+import edu.cmu.graphchi.engine.BitsetScheduler;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+import edu.cmu.graphchi.engine.VertexInterval;
+import edu.cmu.graphchi.io.CompressedIO;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+
+/**
+ * Runs GraphChi programs on a graph held in memory. The shards are read once,
+ * on the first run, into int arrays: in-edges by destination (CSC, which also
+ * numbers the edges) and out-edges by source (CSR, with the number of each
+ * edge). Vertex and edge values are kept in byte arrays in the format of
+ * their converters, so the update functions run unchanged, and stay in memory
+ * from one run to the next.
+ * <p>
+ * Iterations go over the intervals of the shards in order, with the same
+ * scheduling and the same deterministic execution as {@link GraphChiEngine}:
+ * a vertex with a neighbor in its own interval is updated on one thread in
+ * vertex order, the others in parallel. Each interval is one sub-interval.
+ * <p>
+ * The vertex values are written to the vertex data file after every run,
+ * for the usual output tools. Edge values are not written back to the
+ * shards.
+ */
+public class InMemoryEngine<V, E> extends GraphChiEngine<V, E> {
+
+	private static Logger logger = ChiLogger.getLogger("inmemory-engine");
+
+	/**
+	 * Bytes per edge besides its value: source and destination in the CSC,
+	 * destination and edge number in the CSR.
+	 */
+	private static final int EDGE_OVERHEAD = 16;
+	/** Bytes per vertex besides its value: the offsets into both */
+	private static final int VERTEX_OVERHEAD = 8;
+
+	/**
+	 * Memory a graph held in memory may take: -Dengine.memory.mb, default
+	 * half of the heap.
+	 */
+	public static long defaultMemoryBudget() {
+		return Long.getLong("engine.memory.mb", Runtime.getRuntime()
+				.maxMemory() >> 21) << 20;
+	}
+
+	/**
+	 * Engine of the mains, with the default memory budget.
+	 *
+	 * @see #create(String, int, BytesToValueConverter, BytesToValueConverter,
+	 *      long)
+	 */
+	public static <V, E> GraphChiEngine<V, E> create(String baseFilename,
+			int nShards, BytesToValueConverter<V> vertexConverter,
+			BytesToValueConverter<E> edgeConverter) throws IOException {
+		return create(baseFilename, nShards, vertexConverter, edgeConverter,
+				defaultMemoryBudget());
+	}
+
+	/**
+	 * Engine in memory if the graph fits in the budget, otherwise on disk.
+	 * -Dengine.mode=memory or -Dengine.mode=disk overrides the choice.
+	 *
+	 * @param budget
+	 *            bytes the engine may keep for the graph. An in-memory engine
+	 *            holds them until it is dropped, so engines alive at the same
+	 *            time must split the heap between them.
+	 * @return an engine with the converters set
+	 */
+	public static <V, E> GraphChiEngine<V, E> create(String baseFilename,
+			int nShards, BytesToValueConverter<V> vertexConverter,
+			BytesToValueConverter<E> edgeConverter, long budget)
+			throws IOException {
+		String mode = System.getProperty("engine.mode", "auto");
+		long estimate = estimateMemory(baseFilename, nShards,
+				vertexConverter, edgeConverter);
+		boolean inMemory;
+		if ("memory".equals(mode)) {
+			inMemory = true;
+		} else if ("disk".equals(mode)) {
+			inMemory = false;
+		} else {
+			inMemory = (estimate <= budget);
+		}
+		logger.info(String.format(
+				"%s: about %d MB in memory, budget %d MB -- running %s",
+				baseFilename, estimate >> 20, budget >> 20,
+				(inMemory ? "in memory" : "on disk")));
+
+		GraphChiEngine<V, E> engine = (inMemory ? new InMemoryEngine<V, E>(
+				baseFilename, nShards) : new GraphChiEngine<V, E>(
+				baseFilename, nShards));
+		engine.setVertexDataConverter(vertexConverter);
+		engine.setEdataConverter(edgeConverter);
+		return engine;
+	}
+
+	/**
+	 * Memory the graph takes in an in-memory engine. The number of edges is
+	 * bounded by the size of the adjacency shards, four bytes per edge.
+	 */
+	public static long estimateMemory(String baseFilename, int nShards,
+			BytesToValueConverter<?> vertexConverter,
+			BytesToValueConverter<?> edgeConverter) throws IOException {
+		long edges = 0;
+		for (int p = 0; p < nShards; p++) {
+			edges += new File(ChiFilenames.getFilenameShardsAdj(baseFilename,
+					p, nShards)).length() / 4;
+		}
+		if (edges > Integer.MAX_VALUE - 8) {
+			// Edges are numbered with ints
+			return Long.MAX_VALUE;
+		}
+		long vertices = ChiFilenames.numVertices(baseFilename, nShards);
+		int vertexSize = (vertexConverter == null ? 0 : vertexConverter
+				.sizeOf());
+		int edgeSize = (edgeConverter == null ? 0 : edgeConverter.sizeOf());
+		return edges * (EDGE_OVERHEAD + edgeSize) + vertices
+				* (VERTEX_OVERHEAD + vertexSize);
+	}
+
+	/**
+	 * Fixed-size records in byte arrays of at most 1 GB.
+	 */
+	static class Records {
+		private final int size;
+		private final int shift;
+		private final int mask;
+		private final byte[][] chunks;
+
+		Records(long count, int size) {
+			this.size = size;
+			int bits = 30 - (32 - Integer.numberOfLeadingZeros(Math.max(size,
+					1)));
+			this.shift = bits;
+			this.mask = (1 << bits) - 1;
+			int n = (int) ((count + mask) >>> bits);
+			chunks = new byte[n][];
+			for (int i = 0; i < n; i++) {
+				long records = Math.min(1L << bits, count - ((long) i << bits));
+				chunks[i] = new byte[(int) records * size];
+			}
+		}
+
+		/**
+		 * @return a copy of the record, as the block manager of the engine
+		 *         hands out
+		 */
+		byte[] get(int i) {
+			byte[] value = new byte[size];
+			System.arraycopy(chunks[i >>> shift], (i & mask) * size, value, 0,
+					size);
+			return value;
+		}
+
+		void set(int i, byte[] value, int offset) {
+			System.arraycopy(value, offset, chunks[i >>> shift], (i & mask)
+					* size, size);
+		}
+
+		void read(InputStream in) throws IOException {
+			for (byte[] chunk : chunks) {
+				int n = 0;
+				while (n < chunk.length) {
+					int r = in.read(chunk, n, chunk.length - n);
+					if (r < 0) {
+						throw new EOFException();
+					}
+					n += r;
+				}
+			}
+		}
+
+		void write(OutputStream out) throws IOException {
+			for (byte[] chunk : chunks) {
+				out.write(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Context of the in-memory engine; the setters of GraphChiContext are
+	 * protected.
+	 */
+	private static class Context extends GraphChiContext {
+		void begin(int iteration, int numIterations, long numVertices,
+				long numEdges, Scheduler scheduler, VertexIdTranslate translate) {
+			setIteration(iteration);
+			setNumIterations(numIterations);
+			setNumVertices(numVertices);
+			setNumEdges(numEdges);
+			setScheduler(scheduler);
+			setVertexIdTranslate(translate);
+		}
+
+		void interval(VertexInterval interval) {
+			setCurInterval(interval);
+		}
+	}
+
+	/**
+	 * Scheduler given to programs when the scheduler is disabled, like the
+	 * one of the disk engine.
+	 */
+	private static class NoScheduler implements Scheduler {
+		public void addTask(int vertexId) {
+		}
+
+		public void removeTasks(int from, int to) {
+		}
+
+		public void addAllTasks() {
+		}
+
+		public boolean hasTasks() {
+			return true;
+		}
+
+		public boolean isScheduled(int i) {
+			return true;
+		}
+
+		public void removeAllTasks() {
+		}
+
+		public void scheduleOutNeighbors(ChiVertex vertex) {
+		}
+
+		public void scheduleInNeighbors(ChiVertex vertex) {
+		}
+	}
+
+	private boolean loaded = false;
+	private int numEdges;
+
+	// CSC: in-edges of vertex v are inOffsets[v] .. inOffsets[v + 1] - 1,
+	// and the position is the edge number
+	private int[] inOffsets;
+	private int[] inSources;
+	// CSR: out-edges with their edge numbers
+	private int[] outOffsets;
+	private int[] outTargets;
+	private int[] outEdges;
+	// Vertices with a neighbor in the same interval
+	private long[] unsafe;
+
+	private Records vertexValues;
+	private Records edgeValues;
+
+	private final Context context = new Context();
+
+	public InMemoryEngine(String baseFilename, int nShards) throws IOException {
+		super(baseFilename, nShards);
+	}
+
+	@Override
+	public long numEdges() {
+		return numEdges;
+	}
+
+	@Override
+	public GraphChiContext getContext() {
+		return context;
+	}
+
+	private int edgeSize() {
+		return (edataConverter == null ? 0 : edataConverter.sizeOf());
+	}
+
+	/**
+	 * Receives the edges of an adjacency shard; index counts the edges of
+	 * the shard from 0.
+	 */
+	public interface EdgeVisitor {
+		void edge(int src, int dst, int index) throws IOException;
+	}
+
+	/**
+	 * Reads the adjacency shard of interval p, edges in the order of the
+	 * shard (by source, then destination).
+	 */
+	public static void readShard(String baseFilename, int p, int nShards,
+			EdgeVisitor visitor) throws IOException {
+		String adjFilename = ChiFilenames.getFilenameShardsAdj(baseFilename,
+				p, nShards);
+		File compressed = new File(adjFilename + ".gz");
+		InputStream raw = (compressed.exists() ? new GZIPInputStream(
+				new FileInputStream(compressed)) : new FileInputStream(
+				adjFilename));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(raw,
+				1 << 20));
+		try {
+			int vid = 0;
+			int index = 0;
+			while (true) {
+				int ns;
+				try {
+					ns = in.readUnsignedByte();
+				} catch (EOFException e) {
+					break;
+				}
+				if (ns == 0) {
+					// The next byte tells how many more vertices have none
+					vid += 1 + in.readUnsignedByte();
+					continue;
+				}
+				int n = (ns == 0xff ? Integer.reverseBytes(in.readInt()) : ns);
+				while (--n >= 0) {
+					visitor.edge(vid, Integer.reverseBytes(in.readInt()),
+							index++);
+				}
+				vid++;
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the edge values of shard p, or null if there are none on disk
+	 */
+	private byte[] readEdgeData(int p) throws IOException {
+		int sizeOf = edgeSize();
+		if (sizeOf == 0) {
+			return null;
+		}
+		String edataFilename = ChiFilenames.getFilenameShardEdata(
+				baseFilename, edataConverter, p, nShards);
+		int blockSize = ChiFilenames.getBlocksize(sizeOf);
+		if (!new File(edataFilename + ".size").exists()
+				|| !new File(ChiFilenames.getDirnameShardEdataBlock(
+						edataFilename, blockSize)).exists()) {
+			logger.warning("No edge data in " + edataFilename);
+			return null;
+		}
+		int size = ChiFilenames.getShardEdataSize(edataFilename);
+		byte[] data = new byte[size];
+		byte[] block = new byte[blockSize];
+		for (int idx = 0, blockId = 0; idx < size; idx += blockSize, blockId++) {
+			int len = Math.min(blockSize, size - idx);
+			CompressedIO.readCompressed(
+					new File(ChiFilenames.getFilenameShardEdataBlock(
+							edataFilename, blockId, blockSize)), block, len);
+			System.arraycopy(block, 0, data, idx, len);
+		}
+		return data;
+	}
+
+	private void load() throws IOException {
+		long startTime = System.currentTimeMillis();
+		final int nv = numVertices();
+
+		// Degrees
+		final int[] inCursor = new int[nv + 1];
+		final int[] outCursor = new int[nv + 1];
+		long edges = 0;
+		for (int p = 0; p < nShards; p++) {
+			readShard(baseFilename, p, nShards, new EdgeVisitor() {
+				public void edge(int src, int dst, int index) {
+					inCursor[dst]++;
+					outCursor[src]++;
+				}
+			});
+		}
+		inOffsets = new int[nv + 1];
+		outOffsets = new int[nv + 1];
+		for (int v = 0; v < nv; v++) {
+			edges += inCursor[v];
+			if (edges > Integer.MAX_VALUE - 8) {
+				throw new IOException(baseFilename
+						+ " has too many edges for the in-memory engine");
+			}
+			inOffsets[v + 1] = inOffsets[v] + inCursor[v];
+			outOffsets[v + 1] = outOffsets[v] + outCursor[v];
+		}
+		numEdges = (int) edges;
+		System.arraycopy(inOffsets, 0, inCursor, 0, nv + 1);
+		System.arraycopy(outOffsets, 0, outCursor, 0, nv + 1);
+
+		inSources = new int[numEdges];
+		outTargets = new int[numEdges];
+		outEdges = new int[numEdges];
+		unsafe = new long[(nv + 63) >>> 6];
+		final int sizeOf = edgeSize();
+		edgeValues = new Records(numEdges, sizeOf);
+
+		// The shard of an interval holds the in-edges of its vertices sorted
+		// by source, and the shards follow each other by destination, so both
+		// arrays fill in the edge order of the disk engine
+		for (int p = 0; p < nShards; p++) {
+			final int first = intervals.get(p).getFirstVertex();
+			final int last = intervals.get(p).getLastVertex();
+			final byte[] data = readEdgeData(p);
+			readShard(baseFilename, p, nShards, new EdgeVisitor() {
+				public void edge(int src, int dst, int index) {
+					int e = inCursor[dst]++;
+					inSources[e] = src;
+					int o = outCursor[src]++;
+					outTargets[o] = dst;
+					outEdges[o] = e;
+					if (data != null) {
+						edgeValues.set(e, data, index * sizeOf);
+					}
+					if (src >= first && src <= last) {
+						unsafe[src >>> 6] |= 1L << (src & 63);
+						unsafe[dst >>> 6] |= 1L << (dst & 63);
+					}
+				}
+			});
+		}
+
+		// Vertex values of an earlier run, if any
+		vertexValues = new Records(nv, vertexDataConverter.sizeOf());
+		File vertexFile = new File(ChiFilenames.getFilenameOfVertexData(
+				baseFilename, vertexDataConverter, false));
+		if (vertexFile.exists()
+				&& vertexFile.length() >= (long) nv
+						* vertexDataConverter.sizeOf()) {
+			InputStream in = new BufferedInputStream(new FileInputStream(
+					vertexFile), 1 << 20);
+			try {
+				vertexValues.read(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		loaded = true;
+		logger.info(String.format(
+				"%s: %d vertices, %d edges loaded in %.3fs", baseFilename, nv,
+				numEdges, (System.currentTimeMillis() - startTime) * 0.001));
+	}
+
+	private void writeVertexData() throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(
+				ChiFilenames.getFilenameOfVertexData(baseFilename,
+						vertexDataConverter, false)), 1 << 20);
+		try {
+			vertexValues.write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public void run(GraphChiProgram<V, E> program, int niters)
+			throws IOException {
+		if (!hasSetEdgeDataConverter) {
+			throw new IllegalStateException(
+					"You need to call setEdataConverter() prior to calling run()!");
+		}
+		if (!hasSetVertexDataConverter) {
+			throw new IllegalStateException(
+					"You need to call setVertexDataConverter() prior to calling run()!");
+		}
+		if (!loaded) {
+			load();
+		}
+
+		int nprocs = Math.max(4, Runtime.getRuntime().availableProcessors());
+		if (System.getProperty("num_threads") != null) {
+			nprocs = Integer.parseInt(System.getProperty("num_threads"));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(nprocs);
+
+		int nv = numVertices();
+		Scheduler sched;
+		if (enableScheduler) {
+			scheduler = new BitsetScheduler(nv);
+			scheduler.addAllTasks();
+			sched = scheduler;
+		} else {
+			scheduler = null;
+			sched = new NoScheduler();
+		}
+
+		long startTime = System.currentTimeMillis();
+		long updates = 0;
+		int[] vertices = new int[0];
+		try {
+			for (int iter = 0; iter < niters; iter++) {
+				context.begin(iter, niters, nv, numEdges, sched,
+						vertexIdTranslate);
+				program.beginIteration(context);
+
+				if (scheduler != null) {
+					if (iter > 0 && !scheduler.hasTasks()) {
+						logger.info("No new tasks to run. Terminating.");
+						break;
+					}
+					scheduler.reset();
+				}
+
+				for (VertexInterval interval : intervals) {
+					int first = interval.getFirstVertex();
+					int last = interval.getLastVertex();
+					program.beginInterval(context, interval);
+
+					if (vertices.length < last - first + 1) {
+						vertices = new int[last - first + 1];
+					}
+					int n = 0;
+					for (int v = first; v <= last; v++) {
+						if (scheduler == null || scheduler.isScheduled(v)) {
+							vertices[n++] = v;
+						}
+					}
+					if (n > 0) {
+						if (scheduler != null) {
+							scheduler.removeTasks(first, last);
+						}
+						context.interval(interval);
+						program.beginSubInterval(context, interval);
+						execUpdates(executor, program, vertices, n);
+						program.endSubInterval(context, interval);
+						updates += n;
+					}
+					program.endInterval(context, interval);
+				}
+				program.endIteration(context);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		writeVertexData();
+		logger.info(String.format("Engine finished in %.3fs, %d updates",
+				(System.currentTimeMillis() - startTime) * 0.001, updates));
+	}
+
+	private boolean isUnsafe(int v) {
+		return enableDeterministicExecution
+				&& (unsafe[v >>> 6] & (1L << (v & 63))) != 0;
+	}
+
+	/**
+	 * Vertices with a neighbor in the interval are updated in order on one
+	 * thread, the others in parallel chunks, as in the disk engine.
+	 */
+	private void execUpdates(ExecutorService executor,
+			final GraphChiProgram<V, E> program, final int[] vertices,
+			final int n) throws IOException {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		futures.add(executor.submit(new Runnable() {
+			public void run() {
+				GraphChiContext threadContext = context.clone(0);
+				for (int i = 0; i < n; i++) {
+					if (isUnsafe(vertices[i])) {
+						program.update(new MemoryVertex(vertices[i]),
+								threadContext);
+					}
+				}
+			}
+		}));
+
+		final int chunkSize = 1 + n / 64;
+		for (int start = 0, thread = 1; start < n; start += chunkSize, thread++) {
+			final int chunkStart = start;
+			final int chunkEnd = Math.min(n, start + chunkSize);
+			final int threadId = thread;
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					GraphChiContext threadContext = context.clone(threadId);
+					for (int i = chunkStart; i < chunkEnd; i++) {
+						if (!isUnsafe(vertices[i])) {
+							program.update(new MemoryVertex(vertices[i]),
+									threadContext);
+						}
+					}
+				}
+			}));
+		}
+
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Update failed", e.getCause());
+			}
+		}
+	}
+
+	private class MemoryEdge implements ChiEdge<E> {
+		private final int vertexId;
+		private final int edge;
+
+		MemoryEdge(int vertexId, int edge) {
+			this.vertexId = vertexId;
+			this.edge = edge;
+		}
+
+		public int getVertexId() {
+			return vertexId;
+		}
+
+		public E getValue() {
+			return edataConverter.getValue(edgeValues.get(edge));
+		}
+
+		public void setValue(E x) {
+			byte[] value = new byte[edataConverter.sizeOf()];
+			edataConverter.setValue(value, x);
+			edgeValues.set(edge, value, 0);
+		}
+	}
+
+	private class MemoryVertex extends ChiVertex<V, E> {
+		private final int id;
+		private final int in;
+		private final int out;
+
+		MemoryVertex(int id) {
+			super(id, null);
+			this.id = id;
+			this.in = inOffsets[id];
+			this.out = outOffsets[id];
+		}
+
+		@Override
+		public V getValue() {
+			return vertexDataConverter.getValue(vertexValues.get(id));
+		}
+
+		@Override
+		public void setValue(V x) {
+			byte[] value = new byte[vertexDataConverter.sizeOf()];
+			vertexDataConverter.setValue(value, x);
+			vertexValues.set(id, value, 0);
+		}
+
+		@Override
+		public int getRandomOutNeighbor() {
+			return outTargets[out + (int) (Math.random() * numOutEdges())];
+		}
+
+		@Override
+		public int getRandomNeighbor() {
+			if (numEdges() == 0) {
+				return -1;
+			}
+			return edge((int) (Math.random() * numEdges())).getVertexId();
+		}
+
+		@Override
+		public int numInEdges() {
+			return inOffsets[id + 1] - in;
+		}
+
+		@Override
+		public int numOutEdges() {
+			return outOffsets[id + 1] - out;
+		}
+
+		@Override
+		public int numEdges() {
+			return numInEdges() + numOutEdges();
+		}
+
+		@Override
+		public ChiEdge<E> inEdge(int i) {
+			return new MemoryEdge(inSources[in + i], in + i);
+		}
+
+		@Override
+		public ChiEdge<E> outEdge(int i) {
+			return new MemoryEdge(outTargets[out + i], outEdges[out + i]);
+		}
+
+		@Override
+		public ChiEdge<E> edge(int i) {
+			int nIn = numInEdges();
+			return (i < nIn ? inEdge(i) : outEdge(i - nIn));
+		}
+
+		@Override
+		public int getOutEdgeId(int i) {
+			return outTargets[out + i];
+		}
+
+		@Override
+		public int[] getOutNeighborArray() {
+			int[] nbrs = new int[numOutEdges()];
+			System.arraycopy(outTargets, out, nbrs, 0, nbrs.length);
+			return nbrs;
+		}
+
+		@Override
+		public E getOutEdgeValue(int i) {
+			return edataConverter.getValue(edgeValues.get(outEdges[out + i]));
+		}
+
+		@Override
+		public void addInEdge(int chunkId, int offset, int vertexId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addOutEdge(int chunkId, int offset, int vertexId) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
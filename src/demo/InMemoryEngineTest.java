@@ -0,0 +1,98 @@
+package demo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.datablocks.FloatConverter;
+import edu.cmu.graphchi.datablocks.IntConverter;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+
+public class InMemoryEngineTest {
+	private File dir;
+	private File graph;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = TestFiles.createTempDir("inmemory");
+		graph = new File(dir, "graph");
+		Writer out = new FileWriter(graph);
+		Random random = new Random(3);
+		for (int i = 0; i < 5000; i++) {
+			out.write(random.nextInt(1000) + " " + random.nextInt(1000) + "\n");
+		}
+		out.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFiles.delete(dir);
+	}
+
+	private byte[] vertexData() throws IOException {
+		File file = new File(ChiFilenames.getFilenameOfVertexData(
+				graph.getPath(), new IntConverter(), false));
+		return TestFiles.read(file);
+	}
+
+	@Test
+	public void testConnectedComponents() throws Exception {
+		new ParallelSharder(1).run(
+				ConnectedComponents.createSharder(graph.getPath(), 3), graph,
+				"edgelist");
+
+		GraphChiEngine<Integer, Integer> disk = new GraphChiEngine<Integer, Integer>(
+				graph.getPath(), 3);
+		disk.setVertexDataConverter(new IntConverter());
+		disk.setEdataConverter(new IntConverter());
+		disk.setEnableScheduler(true);
+		ConnectedComponents onDisk = new ConnectedComponents();
+		disk.run(onDisk, 1000);
+		byte[] expected = vertexData();
+
+		InMemoryEngine<Integer, Integer> memory = new InMemoryEngine<Integer, Integer>(
+				graph.getPath(), 3);
+		memory.setVertexDataConverter(new IntConverter());
+		memory.setEdataConverter(new IntConverter());
+		memory.setEnableScheduler(true);
+		ConnectedComponents inMemory = new ConnectedComponents();
+		memory.run(inMemory, 1000);
+
+		assertEquals(disk.numEdges(), memory.numEdges());
+		assertEquals(onDisk.getIterationCounts().size(), inMemory
+				.getIterationCounts().size());
+		assertTrue(Arrays.equals(expected, vertexData()));
+	}
+
+	@Test
+	public void testPagerank() throws Exception {
+		new ParallelSharder(1).run(Pagerank.createSharder(graph.getPath(), 2),
+				graph, "edgelist");
+
+		GraphChiEngine<Float, Float> disk = new GraphChiEngine<Float, Float>(
+				graph.getPath(), 2);
+		disk.setVertexDataConverter(new FloatConverter());
+		disk.setEdataConverter(new FloatConverter());
+		disk.run(new Pagerank(), 5);
+		byte[] expected = vertexData();
+
+		// The graph stays loaded between runs
+		GraphChiEngine<Float, Float> memory = new InMemoryEngine<Float, Float>(
+				graph.getPath(), 2);
+		memory.setVertexDataConverter(new FloatConverter());
+		memory.setEdataConverter(new FloatConverter());
+		memory.run(new Pagerank(), 2);
+		memory.run(new Pagerank(), 5);
+		assertTrue(Arrays.equals(expected, vertexData()));
+	}
+}
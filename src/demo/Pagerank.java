@@ -12,10 +12,15 @@ import edu.cmu.graphchi.preprocessing.VertexProcessor;
 import edu.cmu.graphchi.util.IdFloat;
 import edu.cmu.graphchi.util.Toplist;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.TreeSet;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -29,10 +34,84 @@ public class Pagerank implements GraphChiProgram<Float, Float> {
 
 	private static Logger logger = ChiLogger.getLogger("pagerank");
 
+	private final double tolerance;
+	private final float epsilon;
+	private final boolean converge;
+	private final Residual residual = new Residual();
+
+	private int topK = 0;
+	private final List<TopK> topLists = new ArrayList<TopK>();
+	private final ThreadLocal<TopK> topList = new ThreadLocal<TopK>() {
+		@Override
+		protected TopK initialValue() {
+			TopK t = new TopK(topK);
+			synchronized (topLists) {
+				topLists.add(t);
+			}
+			return t;
+		}
+	};
+
+	/**
+	 * Runs for the number of iterations given to the engine.
+	 */
+	public Pagerank() {
+		this(0.0, 0.0f);
+	}
+
+	/**
+	 * Runs until the ranks converge. Needs the engine scheduler.
+	 *
+	 * @param tolerance
+	 *            stop when the sum of the absolute rank changes of an
+	 *            iteration (L1 residual) falls below this; 0 disables the
+	 *            check
+	 * @param epsilon
+	 *            if positive, only the out-neighbors of vertices whose rank
+	 *            changed by more than epsilon are updated again (delta
+	 *            scheduling); otherwise every vertex is updated in every
+	 *            iteration
+	 */
+	public Pagerank(double tolerance, float epsilon) {
+		this.tolerance = tolerance;
+		this.epsilon = epsilon;
+		this.converge = (tolerance > 0 || epsilon > 0);
+	}
+
+	/**
+	 * Collects the k vertices with the largest rank while the last iteration
+	 * runs, one heap per update thread, so the vertex data need not be
+	 * scanned afterwards. Only in the fixed-iteration mode, where the last
+	 * iteration is known and updates every vertex.
+	 */
+	public void setTopK(int k) {
+		this.topK = k;
+	}
+
+	/**
+	 * @return the top list collected in the last iteration, or null if none
+	 *         was collected
+	 */
+	public TopK getTopK() {
+		if (topK <= 0 || converge) {
+			return null;
+		}
+		TopK merged = new TopK(topK);
+		synchronized (topLists) {
+			for (TopK t : topLists) {
+				merged.addAll(t);
+			}
+		}
+		return merged;
+	}
+
 	public void update(ChiVertex<Float, Float> vertex, GraphChiContext context) {
 		if (context.getIteration() == 0) {
 			/* Initialize on first iteration */
 			vertex.setValue(1.0f);
+			if (converge) {
+				context.getScheduler().addTask(vertex.getId());
+			}
 		} else {
 			/*
 			 * On other iterations, set my value to be the weighted average of
@@ -42,14 +121,32 @@ public class Pagerank implements GraphChiProgram<Float, Float> {
 			for (int i = 0; i < vertex.numInEdges(); i++) {
 				sum += vertex.inEdge(i).getValue();
 			}
-			vertex.setValue(0.15f + 0.85f * sum);
+			float value = 0.15f + 0.85f * sum;
+
+			if (converge) {
+				float delta = Math.abs(value - vertex.getValue());
+				residual.add(delta);
+				if (epsilon > 0) {
+					if (delta > epsilon) {
+						context.getScheduler().scheduleOutNeighbors(vertex);
+					}
+				} else {
+					context.getScheduler().addTask(vertex.getId());
+				}
+			}
+			vertex.setValue(value);
 		}
 
 		/*
 		 * Write my value (divided by my out-degree) to my out-edges so
 		 * neighbors can read it.
 		 */
-		float outValue = vertex.getValue() / vertex.numOutEdges();
+		float rank = vertex.getValue();
+		if (topK > 0 && !converge && context.isLastIteration()) {
+			topList.get().add(vertex.getId(), rank);
+		}
+
+		float outValue = rank / vertex.numOutEdges();
 		for (int i = 0; i < vertex.numOutEdges(); i++) {
 			vertex.outEdge(i).setValue(outValue);
 		}
@@ -63,6 +160,14 @@ public class Pagerank implements GraphChiProgram<Float, Float> {
 	}
 
 	public void endIteration(GraphChiContext ctx) {
+		if (converge && ctx.getIteration() > 0) {
+			double r = residual.getAndReset();
+			logger.info("Iteration " + ctx.getIteration() + ": residual " + r);
+			if (r < tolerance) {
+				// An empty scheduler ends the run
+				ctx.getScheduler().removeAllTasks();
+			}
+		}
 	}
 
 	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
@@ -85,7 +190,7 @@ public class Pagerank implements GraphChiProgram<Float, Float> {
 	 * @return
 	 * @throws IOException
 	 */
-	protected static FastSharder createSharder(String graphName, int numShards)
+	public static FastSharder createSharder(String graphName, int numShards)
 			throws IOException {
 		return new FastSharder<Float, Float>(graphName, numShards,
 				new VertexProcessor<Float>() {
@@ -103,6 +208,16 @@ public class Pagerank implements GraphChiProgram<Float, Float> {
 	 * Usage: java edu.cmu.graphchi.demo.PageRank graph-name num-shards
 	 * filetype(edgelist|adjlist) For specifying the number of shards, 20-50
 	 * million edges/shard is often a good configuration.
+	 *
+	 * With -Dpagerank.tolerance=t the run stops once the L1 residual of an
+	 * iteration is below t, and with -Dpagerank.epsilon=e only vertices next
+	 * to a change larger than e are updated; -Dpagerank.iterations caps the
+	 * iterations (default 100).
+	 *
+	 * -Dpagerank.topk=k prints the k highest ranks (default 20), and
+	 * -Dpagerank.topk.file writes them as CSV, or with
+	 * -Dpagerank.topk.format=binary as little-endian (int id, float rank)
+	 * records.
 	 */
 	public static void main(String[] args) throws Exception {
 		String baseFilename = args[0];
@@ -116,35 +231,73 @@ public class Pagerank implements GraphChiProgram<Float, Float> {
 		if (baseFilename.equals("pipein")) { // Allow piping graph in
 			sharder.shard(System.in, fileType);
 		} else {
-			if (!new File(ChiFilenames.getFilenameIntervals(baseFilename,
-					nShards)).exists()) {
-				sharder.shard(new FileInputStream(new File(baseFilename)),
-						fileType);
-			} else {
-				logger.info("Found shards -- no need to preprocess");
+			ShardCache cache = new ShardCache(baseFilename, nShards, fileType);
+			if (!cache.prepare(new FloatConverter(), 0.0f)) {
+				ParallelSharder.shard(sharder, new File(baseFilename), fileType);
+				cache.sharded(new FloatConverter());
 			}
 		}
 
 		/* Run GraphChi */
-		GraphChiEngine<Float, Float> engine = new GraphChiEngine<Float, Float>(
-				baseFilename, nShards);
-		engine.setEdataConverter(new FloatConverter());
-		engine.setVertexDataConverter(new FloatConverter());
+		GraphChiEngine<Float, Float> engine = InMemoryEngine.create(
+				baseFilename, nShards, new FloatConverter(),
+				new FloatConverter());
 		engine.setModifiesInedges(false); // Important optimization
 
-		engine.run(new Pagerank(), 10);
+		double tolerance = Double.parseDouble(System.getProperty(
+				"pagerank.tolerance", "0"));
+		float epsilon = Float.parseFloat(System.getProperty(
+				"pagerank.epsilon", "0"));
+		int topN = Integer.getInteger("pagerank.topk", 20);
+		Pagerank program;
+		if (tolerance > 0 || epsilon > 0) {
+			engine.setEnableScheduler(true);
+			program = new Pagerank(tolerance, epsilon);
+			engine.run(program, Integer.getInteger("pagerank.iterations", 100));
+		} else {
+			program = new Pagerank();
+			program.setTopK(topN);
+			engine.run(program, 10);
+		}
 
 		logger.info("Ready.");
 
 		/* Output results */
-		int i = 0;
+		TopK top = program.getTopK();
+		if (top == null) {
+			// The last iteration was not known in advance
+			top = new TopK(topN);
+			for (IdFloat vertexRank : Toplist.topListFloat(baseFilename,
+					engine.numVertices(), topN)) {
+				top.add(vertexRank.getVertexId(), vertexRank.getValue());
+			}
+		}
+
 		VertexIdTranslate trans = engine.getVertexIdTranslate();
-		TreeSet<IdFloat> top20 = Toplist.topListFloat(baseFilename,
-				engine.numVertices(), 20);
-		for (IdFloat vertexRank : top20) {
-			System.out.println(++i + ": "
-					+ trans.backward(vertexRank.getVertexId()) + " = "
-					+ vertexRank.getValue());
+		int[] ids = top.getIds();
+		float[] values = top.getValues();
+		for (int i = 0; i < ids.length; i++) {
+			System.out.println((i + 1) + ": " + trans.backward(ids[i]) + " = "
+					+ values[i]);
+		}
+
+		String outputFilename = System.getProperty("pagerank.topk.file");
+		if (outputFilename != null) {
+			if ("binary".equals(System.getProperty("pagerank.topk.format"))) {
+				OutputStream out = new FileOutputStream(outputFilename);
+				try {
+					top.writeBinary(out, trans);
+				} finally {
+					out.close();
+				}
+			} else {
+				Writer out = new BufferedWriter(new FileWriter(outputFilename));
+				try {
+					top.writeCsv(out, trans);
+				} finally {
+					out.close();
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,454 @@
+package demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.preprocessing.FastSharder;
+
+/**
+ * Front end of FastSharder for edge list files. The file is split into byte
+ * ranges and each range is parsed on its own thread, without a String per
+ * line: vertex ids are read straight from the bytes, and only an edge value
+ * token becomes a String for the EdgeProcessor.
+ * <p>
+ * Besides the text formats of FastSharder, binary edge lists are read through
+ * memory maps. Records are little-endian, "from, to" followed by an optional
+ * float value:
+ * <ul>
+ * <li>binedgelist: int32 ids, 8 bytes per edge
+ * <li>binedgelist64: int64 ids, 16 bytes per edge; ids must fit in an int
+ * <li>binedgelist-float, binedgelist64-float: with a float32 value, passed to
+ * the EdgeProcessor as Float.toString()
+ * </ul>
+ * <p> Parsed edges go in batches
+ * through a bounded queue to the calling thread, which alone calls
+ * FastSharder.addEdge() (the sharder is not thread-safe). Edges reach the
+ * sharder out of file order; the shards only differ in the order of the
+ * values of duplicate edges.
+ */
+public class ParallelSharder {
+
+	private static Logger logger = ChiLogger.getLogger("parallel-sharder");
+
+	private static final int BATCH_EDGES = 1 << 16;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final long MAP_SIZE = 1 << 28;
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final int nThreads;
+	private long numEdges = 0;
+	private double edgesPerSecond = 0;
+
+	/**
+	 * @param nThreads
+	 *            number of parser threads
+	 */
+	public ParallelSharder(int nThreads) {
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Shards a file with -Dsharder.threads parser threads, by default one per
+	 * core.
+	 */
+	public static void shard(FastSharder<?, ?> sharder, File file,
+			String fileType) throws IOException {
+		new ParallelSharder(Integer.getInteger("sharder.threads", Runtime
+				.getRuntime().availableProcessors())).run(sharder, file,
+				fileType);
+	}
+
+	public long getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * Edges parsed and handed to the sharder per second, before
+	 * FastSharder.process().
+	 */
+	public double getEdgesPerSecond() {
+		return edgesPerSecond;
+	}
+
+	/**
+	 * @return true for the binary edge list fileTypes, which only
+	 *         ParallelSharder reads
+	 */
+	public static boolean isBinary(String fileType) {
+		return fileType != null && fileType.startsWith("binedgelist");
+	}
+
+	/**
+	 * @return bytes per edge of a binary edge list fileType
+	 */
+	static int recordSize(String fileType) {
+		int recordSize;
+		if (fileType.equals("binedgelist")
+				|| fileType.equals("binedgelist-float")) {
+			recordSize = 8;
+		} else if (fileType.equals("binedgelist64")
+				|| fileType.equals("binedgelist64-float")) {
+			recordSize = 16;
+		} else {
+			throw new IllegalArgumentException("Unknown fileType: " + fileType);
+		}
+		return recordSize + (fileType.endsWith("-float") ? 4 : 0);
+	}
+
+	/**
+	 * Checks a vertex id read from a binary edge list.
+	 */
+	static int toId(long id) {
+		if (id < 0 || id > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Vertex id out of range: " + id);
+		}
+		return (int) id;
+	}
+
+	/**
+	 * Reads the file in the edgelist or adjlist format of FastSharder, or as
+	 * a binary edge list, and calls FastSharder.process().
+	 */
+	public void run(FastSharder<?, ?> sharder, File file, String fileType)
+			throws IOException {
+		boolean adjlist = (fileType != null && (fileType
+				.equals("adjlist") || fileType.startsWith("adjacency")));
+		long length = file.length();
+		// Binary ranges are split at record boundaries
+		int recordSize = (isBinary(fileType) ? recordSize(fileType) : 1);
+		if (length % recordSize != 0) {
+			throw new IOException(file + ": size " + length
+					+ " is not a multiple of " + recordSize + " bytes");
+		}
+		long numRecords = length / recordSize;
+		int nRanges = (int) Math.max(1,
+				Math.min(nThreads, length / BUFFER_SIZE));
+
+		BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(
+				2 * nRanges);
+		Parser[] parsers = new Parser[nRanges];
+		for (int i = 0; i < nRanges; i++) {
+			parsers[i] = new Parser(file, numRecords * i / nRanges
+					* recordSize, numRecords * (i + 1) / nRanges * recordSize,
+					fileType, adjlist, queue);
+			parsers[i].setName("sharder-parser-" + i);
+			parsers[i].setDaemon(true);
+			parsers[i].start();
+		}
+
+		long startTime = System.currentTimeMillis();
+		numEdges = 0;
+		try {
+			int running = nRanges;
+			while (running > 0) {
+				Batch batch = queue.take();
+				if (batch == Batch.END) {
+					running--;
+					continue;
+				}
+				for (int i = 0; i < batch.size; i++) {
+					sharder.addEdge(batch.from[i], batch.to[i],
+							(batch.values != null ? batch.values[i] : null));
+				}
+				numEdges += batch.size;
+			}
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} finally {
+			for (Parser parser : parsers) {
+				parser.interrupt();
+			}
+		}
+
+		for (Parser parser : parsers) {
+			if (parser.error instanceof IOException) {
+				throw (IOException) parser.error;
+			} else if (parser.error instanceof RuntimeException) {
+				throw (RuntimeException) parser.error;
+			} else if (parser.error != null) {
+				throw new RuntimeException(parser.error);
+			}
+		}
+
+		long parsed = System.currentTimeMillis();
+		edgesPerSecond = numEdges * 1000.0 / Math.max(1, parsed - startTime);
+		logger.info(String.format(
+				"%s: %d edges read by %d threads in %.3fs, %.0f edges/s",
+				file.getName(), numEdges, nRanges,
+				(parsed - startTime) * 0.001, edgesPerSecond));
+
+		sharder.process();
+		long finished = System.currentTimeMillis();
+		logger.info(String.format("%s: sharded in %.3fs, %.0f edges/s",
+				file.getName(), (finished - startTime) * 0.001, numEdges
+						* 1000.0 / Math.max(1, finished - startTime)));
+	}
+
+	/**
+	 * Parsed edges. Lines with a vertex value ("id id value") are passed on as
+	 * edges from a vertex to itself, as FastSharder.addEdge() expects.
+	 */
+	private static class Batch {
+		static final Batch END = new Batch();
+
+		final int[] from = new int[BATCH_EDGES];
+		final int[] to = new int[BATCH_EDGES];
+		// Allocated for the first edge with a value
+		String[] values;
+		int size = 0;
+
+		boolean isFull() {
+			return size == BATCH_EDGES;
+		}
+
+		void add(int src, int dst, String value) {
+			if (value != null && values == null) {
+				values = new String[BATCH_EDGES];
+			}
+			from[size] = src;
+			to[size] = dst;
+			if (values != null) {
+				values[size] = value;
+			}
+			size++;
+		}
+	}
+
+	/**
+	 * Parses the lines that start in [start, end). The line that starts
+	 * before the range belongs to the previous parser, the line that crosses
+	 * the end to this one.
+	 */
+	private static class Parser extends Thread {
+		private final File file;
+		private final long start;
+		private final long end;
+		private final String fileType;
+		private final boolean adjlist;
+		private final BlockingQueue<Batch> queue;
+		volatile Throwable error;
+
+		private Batch batch = new Batch();
+		private int[] ids = new int[16];
+		private byte[] line = new byte[256];
+
+		Parser(File file, long start, long end, String fileType,
+				boolean adjlist, BlockingQueue<Batch> queue) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.fileType = fileType;
+			this.adjlist = adjlist;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (isBinary(fileType)) {
+					parseBinary();
+				} else {
+					parse();
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable e) {
+				error = e;
+			}
+			try {
+				queue.put(Batch.END);
+			} catch (InterruptedException e) {
+				// The consumer gave up
+			}
+		}
+
+		private void parse() throws IOException, InterruptedException {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+				long pos = start;
+				int lineLength = 0;
+				// Skip the rest of a line that began in the previous range
+				boolean skip = false;
+				if (start > 0) {
+					ByteBuffer prev = ByteBuffer.allocate(1);
+					channel.read(prev, start - 1);
+					skip = (prev.get(0) != '\n');
+				}
+
+				while (true) {
+					buf.clear();
+					int n = channel.read(buf, pos);
+					if (n < 0) {
+						break;
+					}
+					byte[] bytes = buf.array();
+					for (int i = 0; i < n; i++) {
+						byte c = bytes[i];
+						if (c == '\n') {
+							if (skip) {
+								skip = false;
+							} else {
+								parseLine(line, lineLength);
+							}
+							lineLength = 0;
+							// The next line starts in the following range
+							if (pos + i + 1 >= end) {
+								flush();
+								return;
+							}
+						} else if (!skip) {
+							if (lineLength == line.length) {
+								byte[] grown = new byte[2 * line.length];
+								System.arraycopy(line, 0, grown, 0,
+										lineLength);
+								line = grown;
+							}
+							line[lineLength++] = c;
+						}
+					}
+					pos += n;
+				}
+				// Last line without a newline
+				if (!skip && lineLength > 0) {
+					parseLine(line, lineLength);
+				}
+				flush();
+			} finally {
+				raf.close();
+			}
+		}
+
+		/**
+		 * Reads the records of the range through memory maps of at most
+		 * MAP_SIZE bytes.
+		 */
+		private void parseBinary() throws IOException, InterruptedException {
+			int recordSize = recordSize(fileType);
+			boolean wide = (recordSize >= 16);
+			boolean hasValue = fileType.endsWith("-float");
+			long mapSize = MAP_SIZE / recordSize * recordSize;
+
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				for (long pos = start; pos < end; pos += mapSize) {
+					MappedByteBuffer buf = channel.map(
+							FileChannel.MapMode.READ_ONLY, pos,
+							Math.min(mapSize, end - pos));
+					buf.order(ByteOrder.LITTLE_ENDIAN);
+					while (buf.hasRemaining()) {
+						int from = (wide ? toId(buf.getLong()) : toId(buf
+								.getInt()));
+						int to = (wide ? toId(buf.getLong()) : toId(buf
+								.getInt()));
+						add(from, to, (hasValue ? Float.toString(buf
+								.getFloat()) : null));
+					}
+				}
+				flush();
+			} finally {
+				raf.close();
+			}
+		}
+
+		/**
+		 * Same rules as FastSharder.shard(): lines of at most two characters
+		 * and lines starting with '#' are skipped, tokens are separated by
+		 * tabs or spaces. "from to [value]" or "from count to1 to2 ...".
+		 */
+		private void parseLine(byte[] b, int length)
+				throws InterruptedException {
+			if (length > 0 && b[length - 1] == '\r') {
+				length--;
+			}
+			if (length <= 2 || b[0] == '#') {
+				return;
+			}
+
+			int numIds = 0;
+			String value = null;
+			int i = 0;
+			while (i < length) {
+				while (i < length && (b[i] == ' ' || b[i] == '\t')) {
+					i++;
+				}
+				if (i == length) {
+					break;
+				}
+				int tokenStart = i;
+				while (i < length && b[i] != ' ' && b[i] != '\t') {
+					i++;
+				}
+				if (!adjlist && numIds == 2) {
+					// Edge or vertex value, up to the next separator
+					value = new String(b, tokenStart, i - tokenStart, ASCII);
+					break;
+				}
+				if (numIds == ids.length) {
+					int[] grown = new int[2 * ids.length];
+					System.arraycopy(ids, 0, grown, 0, numIds);
+					ids = grown;
+				}
+				ids[numIds++] = parseInt(b, tokenStart, i);
+			}
+
+			if (numIds < 2) {
+				return;
+			}
+			if (!adjlist) {
+				add(ids[0], ids[1], value);
+				return;
+			}
+			if (ids[1] != numIds - 2) {
+				throw new IllegalArgumentException("Number of edges does not "
+						+ "match number of tokens: " + ids[1] + " != "
+						+ (numIds - 2) + " in: " + new String(b, 0, length));
+			}
+			for (int j = 2; j < numIds; j++) {
+				add(ids[0], ids[j], null);
+			}
+		}
+
+		private static int parseInt(byte[] b, int from, int to) {
+			int value = 0;
+			for (int i = from; i < to; i++) {
+				int digit = b[i] - '0';
+				if (digit < 0 || digit > 9
+						|| value > (Integer.MAX_VALUE - digit) / 10) {
+					throw new NumberFormatException("For input string: \""
+							+ new String(b, from, to - from) + "\"");
+				}
+				value = value * 10 + digit;
+			}
+			return value;
+		}
+
+		private void add(int from, int to, String value)
+				throws InterruptedException {
+			batch.add(from, to, value);
+			if (batch.isFull()) {
+				queue.put(batch);
+				batch = new Batch();
+			}
+		}
+
+		private void flush() throws InterruptedException {
+			if (batch.size > 0) {
+				queue.put(batch);
+				batch = new Batch();
+			}
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package demo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelSharderTest {
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = TestFiles.createTempDir("sharder");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFiles.delete(dir);
+	}
+
+	/**
+	 * Compares the files the sharder wrote for graph a and graph b.
+	 */
+	private void assertSameShards(String a, String b) throws IOException {
+		String[] names = dir.list();
+		Arrays.sort(names);
+		int compared = 0;
+		for (String name : names) {
+			if (name.startsWith(a + ".")) {
+				File other = new File(dir, b + name.substring(a.length()));
+				assertSameFiles(new File(dir, name), other);
+				compared++;
+			}
+		}
+		assertTrue(compared > 0);
+	}
+
+	private void assertSameFiles(File expected, File actual)
+			throws IOException {
+		assertTrue(actual.getName(), actual.exists());
+		if (expected.isDirectory()) {
+			for (String name : expected.list()) {
+				assertSameFiles(new File(expected, name), new File(actual,
+						name));
+			}
+		} else {
+			assertTrue(expected.getName(), Arrays.equals(
+					TestFiles.read(expected), TestFiles.read(actual)));
+		}
+	}
+
+	@Test
+	public void testSameShardsAsFastSharder() throws Exception {
+		// Over 2 MB, so the file is split into several ranges. Distinct
+		// edges: the values of duplicates may arrive in another order.
+		StringBuilder graph = new StringBuilder("# comment\n");
+		Random random = new Random(1);
+		for (int i = 0; i < 200000; i++) {
+			int from = 2 * i;
+			int to = random.nextInt(100000);
+			String value = random.nextInt(100) + ".5";
+			graph.append(i % 2 == 0 ? from + "\t" + to + "\t" + value + "\n"
+					: from + " " + to + " " + value + "\r\n");
+		}
+		graph.append("1 3 0.25");
+		assertTrue(graph.length() > 2 << 20);
+
+		File serial = new File(dir, "serial");
+		File parallel = new File(dir, "parallel");
+		for (File file : new File[] { serial, parallel }) {
+			Writer out = new FileWriter(file);
+			out.write(graph.toString());
+			out.close();
+		}
+
+		WeightedPagerank.createSharder(serial.getPath(), 3).shard(
+				new FileInputStream(serial), "edgelist");
+		ParallelSharder sharder = new ParallelSharder(4);
+		sharder.run(WeightedPagerank.createSharder(parallel.getPath(), 3),
+				parallel, "edgelist");
+
+		assertEquals(200001, sharder.getNumEdges());
+		assertSameShards("serial", "parallel");
+	}
+
+	@Test
+	public void testBinaryEdgeList() throws Exception {
+		// int64 ids and a float value, 20 bytes per edge, over 2 MB
+		StringBuilder graph = new StringBuilder();
+		ByteBuffer records = ByteBuffer.allocate(150000 * 20).order(
+				ByteOrder.LITTLE_ENDIAN);
+		Random random = new Random(2);
+		for (int i = 0; i < 150000; i++) {
+			int from = 3 * i + 1;
+			int to = random.nextInt(50000);
+			float value = random.nextInt(1000) * 0.125f;
+			graph.append(from + " " + to + " " + value + "\n");
+			records.putLong(from).putLong(to).putFloat(value);
+		}
+
+		File text = new File(dir, "text");
+		Writer out = new FileWriter(text);
+		out.write(graph.toString());
+		out.close();
+		File binary = new File(dir, "binary");
+		FileOutputStream bout = new FileOutputStream(binary);
+		bout.write(records.array());
+		bout.close();
+
+		WeightedPagerank.createSharder(text.getPath(), 3).shard(
+				new FileInputStream(text), "edgelist");
+		ParallelSharder sharder = new ParallelSharder(4);
+		sharder.run(WeightedPagerank.createSharder(binary.getPath(), 3),
+				binary, "binedgelist64-float");
+
+		assertEquals(150000, sharder.getNumEdges());
+		assertSameShards("text", "binary");
+	}
+
+	@Test(expected = IOException.class)
+	public void testBinaryRecordSize() throws Exception {
+		File file = new File(dir, "truncated");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[12]);
+		out.close();
+
+		new ParallelSharder(1).run(Pagerank.createSharder(file.getPath(), 1),
+				file, "binedgelist");
+	}
+
+	@Test
+	public void testAdjacencyList() throws Exception {
+		File file = new File(dir, "adj");
+		Writer out = new FileWriter(file);
+		out.write("0 3 1 2 3\n1 1 0\n\n2 0\n3 2 0 1");
+		out.close();
+
+		ParallelSharder sharder = new ParallelSharder(4);
+		sharder.run(Pagerank.createSharder(file.getPath(), 1), file,
+				"adjlist");
+		assertEquals(6, sharder.getNumEdges());
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testBadVertexId() throws Exception {
+		File file = new File(dir, "bad");
+		Writer out = new FileWriter(file);
+		out.write("0 1\n1 x2\n");
+		out.close();
+
+		new ParallelSharder(1).run(Pagerank.createSharder(file.getPath(), 1),
+				file, "edgelist");
+	}
+}
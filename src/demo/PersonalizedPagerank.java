@@ -0,0 +1,273 @@
+package demo;
+
+import edu.cmu.graphchi.*;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+import edu.cmu.graphchi.engine.VertexInterval;
+import edu.cmu.graphchi.io.CompressedIO;
+import edu.cmu.graphchi.preprocessing.EdgeProcessor;
+import edu.cmu.graphchi.preprocessing.FastSharder;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+import edu.cmu.graphchi.preprocessing.VertexProcessor;
+import edu.cmu.graphchi.util.IdFloat;
+import edu.cmu.graphchi.vertexdata.ForeachCallback;
+import edu.cmu.graphchi.vertexdata.VertexAggregator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Personalized PageRank: random walks restart at a set of seed vertices
+ * instead of at any vertex. Several seed sets are computed in one pass over
+ * the shards, each in its own float lane of the vertex and edge data, so the
+ * shard I/O is shared by all queries. The ranks of a seed set sum to at most
+ * one (mass reaching a vertex without out-edges is lost).
+ */
+public class PersonalizedPagerank implements GraphChiProgram<float[], float[]> {
+
+	private static Logger logger = ChiLogger.getLogger("personalized_pagerank");
+
+	private final int lanes;
+
+	// Seed vertices (internal ids, sorted) and their restart mass per lane
+	private final int[] seedIds;
+	private final float[][] restart;
+
+	/**
+	 * @param seeds
+	 *            seed sets, as internal vertex ids; one lane per set
+	 */
+	public PersonalizedPagerank(int[][] seeds) {
+		this.lanes = seeds.length;
+
+		int n = 0;
+		for (int[] set : seeds) {
+			n += set.length;
+		}
+		int[] ids = new int[n];
+		n = 0;
+		for (int[] set : seeds) {
+			System.arraycopy(set, 0, ids, n, set.length);
+			n += set.length;
+		}
+		Arrays.sort(ids);
+
+		int unique = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (i == 0 || ids[i] != ids[i - 1]) {
+				ids[unique++] = ids[i];
+			}
+		}
+		seedIds = Arrays.copyOf(ids, unique);
+		restart = new float[unique][lanes];
+		for (int s = 0; s < lanes; s++) {
+			for (int id : seeds[s]) {
+				int idx = Arrays.binarySearch(seedIds, id);
+				restart[idx][s] = 0.15f / seeds[s].length;
+			}
+		}
+	}
+
+	public void update(ChiVertex<float[], float[]> vertex,
+			GraphChiContext context) {
+		float[] rank = vertex.getValue();
+		Arrays.fill(rank, 0.f);
+		if (context.getIteration() > 0) {
+			for (int i = 0; i < vertex.numInEdges(); i++) {
+				float[] in = vertex.inEdge(i).getValue();
+				for (int s = 0; s < lanes; s++) {
+					rank[s] += in[s];
+				}
+			}
+			for (int s = 0; s < lanes; s++) {
+				rank[s] *= 0.85f;
+			}
+		}
+
+		int idx = Arrays.binarySearch(seedIds, vertex.getId());
+		if (idx >= 0) {
+			for (int s = 0; s < lanes; s++) {
+				rank[s] += restart[idx][s];
+			}
+		}
+		vertex.setValue(rank);
+
+		/* The rank array is not needed any more; reuse it for the shares */
+		int numOutEdges = vertex.numOutEdges();
+		if (numOutEdges > 0) {
+			for (int s = 0; s < lanes; s++) {
+				rank[s] /= numOutEdges;
+			}
+			for (int i = 0; i < numOutEdges; i++) {
+				vertex.outEdge(i).setValue(rank);
+			}
+		}
+	}
+
+	public void beginIteration(GraphChiContext ctx) {
+	}
+
+	public void endIteration(GraphChiContext ctx) {
+	}
+
+	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
+	}
+
+	public void endInterval(GraphChiContext ctx, VertexInterval interval) {
+	}
+
+	public void beginSubInterval(GraphChiContext ctx, VertexInterval interval) {
+	}
+
+	public void endSubInterval(GraphChiContext ctx, VertexInterval interval) {
+	}
+
+	/**
+	 * Initialize the sharder-program.
+	 *
+	 * @param graphName
+	 * @param numShards
+	 * @param lanes
+	 *            number of seed sets
+	 * @return
+	 * @throws IOException
+	 */
+	public static FastSharder createSharder(String graphName, int numShards,
+			final int lanes) throws IOException {
+		return new FastSharder<float[], float[]>(graphName, numShards,
+				new VertexProcessor<float[]>() {
+					public float[] receiveVertexValue(int vertexId, String token) {
+						return new float[lanes];
+					}
+				}, new EdgeProcessor<float[]>() {
+					public float[] receiveEdge(int from, int to, String token) {
+						return new float[lanes];
+					}
+				}, new FloatArrayConverter(lanes), new FloatArrayConverter(
+						lanes));
+	}
+
+	/**
+	 * Reads seed sets, one per line as whitespace-separated vertex ids of the
+	 * input graph. Empty lines and lines starting with # are skipped.
+	 */
+	public static List<int[]> readSeeds(String filename) throws IOException {
+		List<int[]> seeds = new ArrayList<int[]>();
+		BufferedReader in = new BufferedReader(new FileReader(filename));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] tokens = line.split("\\s+");
+				int[] set = new int[tokens.length];
+				for (int i = 0; i < tokens.length; i++) {
+					set[i] = Integer.parseInt(tokens[i]);
+				}
+				seeds.add(set);
+			}
+		} finally {
+			in.close();
+		}
+		return seeds;
+	}
+
+	/**
+	 * Usage: java demo.PersonalizedPagerank graph-name num-shards
+	 * filetype(edgelist|adjlist) seed-file [top-n] Prints the top-n vertices
+	 * (default 20) of every seed set. -Dpagerank.iterations sets the number
+	 * of iterations (default 10).
+	 */
+	public static void main(String[] args) throws Exception {
+		String baseFilename = args[0];
+		int nShards = Integer.parseInt(args[1]);
+		String fileType = args[2];
+		List<int[]> seeds = readSeeds(args[3]);
+		int topN = (args.length >= 5 ? Integer.parseInt(args[4]) : 20);
+		final int lanes = seeds.size();
+
+		CompressedIO.disableCompression();
+
+		/* Create shards */
+		FastSharder sharder = createSharder(baseFilename, nShards, lanes);
+		if (baseFilename.equals("pipein")) { // Allow piping graph in
+			sharder.shard(System.in, fileType);
+		} else {
+			ShardCache cache = new ShardCache(baseFilename, nShards, fileType);
+			if (!cache.prepare(new FloatArrayConverter(lanes), new float[lanes])) {
+				ParallelSharder.shard(sharder, new File(baseFilename), fileType);
+				cache.sharded(new FloatArrayConverter(lanes));
+			}
+		}
+
+		/* Run GraphChi */
+		GraphChiEngine<float[], float[]> engine = new GraphChiEngine<float[], float[]>(
+				baseFilename, nShards);
+		// update() holds the vertex value and one edge value at a time
+		engine.setEdataConverter(new FloatArrayConverter(lanes, true));
+		engine.setVertexDataConverter(new FloatArrayConverter(lanes, true));
+		engine.setModifiesInedges(false); // Important optimization
+
+		/* Translate the seeds to internal ids */
+		VertexIdTranslate trans = engine.getVertexIdTranslate();
+		int[][] internalSeeds = new int[lanes][];
+		for (int s = 0; s < lanes; s++) {
+			int[] set = new int[seeds.get(s).length];
+			int n = 0;
+			for (int id : seeds.get(s)) {
+				int internal = trans.forward(id);
+				if (internal >= 0 && internal < engine.numVertices()) {
+					set[n++] = internal;
+				} else {
+					logger.warning("Seed vertex " + id + " is not in the graph");
+				}
+			}
+			internalSeeds[s] = Arrays.copyOf(set, n);
+		}
+
+		engine.run(new PersonalizedPagerank(internalSeeds),
+				Integer.getInteger("pagerank.iterations", 10));
+
+		logger.info("Ready.");
+
+		/* Output results */
+		final List<TreeSet<IdFloat>> topLists = new ArrayList<TreeSet<IdFloat>>();
+		for (int s = 0; s < lanes; s++) {
+			topLists.add(new TreeSet<IdFloat>(new IdFloat.Comparator()));
+		}
+		final int n = topN;
+		VertexAggregator.foreach(engine.numVertices(), baseFilename,
+				new FloatArrayConverter(lanes, true),
+				new ForeachCallback<float[]>() {
+					public void callback(int vertexId, float[] rank) {
+						for (int s = 0; s < lanes; s++) {
+							TreeSet<IdFloat> topList = topLists.get(s);
+							if (topList.size() < n) {
+								topList.add(new IdFloat(vertexId, rank[s]));
+							} else if (rank[s] > topList.last().getValue()) {
+								topList.remove(topList.last());
+								topList.add(new IdFloat(vertexId, rank[s]));
+							}
+						}
+					}
+				});
+
+		for (int s = 0; s < lanes; s++) {
+			System.out.println("Seed set " + (s + 1) + ":");
+			int i = 0;
+			for (IdFloat vertexRank : topLists.get(s)) {
+				System.out.println(++i + ": "
+						+ trans.backward(vertexRank.getVertexId()) + " = "
+						+ vertexRank.getValue());
+			}
+		}
+	}
+}
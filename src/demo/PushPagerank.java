@@ -0,0 +1,204 @@
+package demo;
+
+import edu.cmu.graphchi.*;
+import edu.cmu.graphchi.engine.GraphChiEngine;
+import edu.cmu.graphchi.engine.VertexInterval;
+import edu.cmu.graphchi.io.CompressedIO;
+import edu.cmu.graphchi.datablocks.FloatConverter;
+import edu.cmu.graphchi.preprocessing.FastSharder;
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+import edu.cmu.graphchi.util.IdFloat;
+import edu.cmu.graphchi.util.Toplist;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * PageRank by pushing residuals. An edge holds the rank mass its source has
+ * sent but its target has not yet taken, so the residual of a vertex is the
+ * sum of its in-edges. A scheduled vertex whose residual exceeds the
+ * threshold adds it to its rank, clears its in-edges and sends 0.85 of it to
+ * its out-edges, scheduling the out-neighbors. Smaller residuals stay on the
+ * edges until more mass arrives. The run ends when no vertex is scheduled.
+ * Converges to the same ranks as {@link Pagerank}, and after the first
+ * sweeps only the vertices near a change read their edges.
+ */
+public class PushPagerank implements GraphChiProgram<Float, Float> {
+
+	private static Logger logger = ChiLogger.getLogger("push_pagerank");
+
+	private final float threshold;
+
+	private static final int UPDATES = 0;
+	private static final int PUSHES = 1;
+
+	// Counts of the current iteration, an array per update thread as in
+	// ConnectedComponents, so updates never contend
+	private final List<int[]> counters = new ArrayList<int[]>();
+	private final ThreadLocal<int[]> counter = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			int[] c = new int[2];
+			synchronized (counters) {
+				counters.add(c);
+			}
+			return c;
+		}
+	};
+	// Touched on the engine thread only
+	private int intervals, visitedIntervals;
+	private boolean intervalVisited;
+
+	/**
+	 * @param threshold
+	 *            smallest residual a vertex pushes on
+	 */
+	public PushPagerank(float threshold) {
+		this.threshold = threshold;
+	}
+
+	public void update(ChiVertex<Float, Float> vertex, GraphChiContext context) {
+		final int[] counts = counter.get();
+		counts[UPDATES]++;
+		float residual;
+		if (context.getIteration() == 0) {
+			/* Every vertex starts with the teleport mass */
+			vertex.setValue(0.0f);
+			residual = 0.15f;
+		} else {
+			residual = 0.f;
+			for (int i = 0; i < vertex.numInEdges(); i++) {
+				residual += vertex.inEdge(i).getValue();
+			}
+			if (residual <= threshold) {
+				return;
+			}
+			for (int i = 0; i < vertex.numInEdges(); i++) {
+				vertex.inEdge(i).setValue(0.0f);
+			}
+		}
+
+		counts[PUSHES]++;
+		vertex.setValue(vertex.getValue() + residual);
+
+		int numOutEdges = vertex.numOutEdges();
+		if (numOutEdges > 0) {
+			float share = 0.85f * residual / numOutEdges;
+			for (int i = 0; i < numOutEdges; i++) {
+				ChiEdge<Float> edge = vertex.outEdge(i);
+				// The sharder stores the edge token, so start from zero
+				edge.setValue(context.getIteration() == 0 ? share : edge
+						.getValue() + share);
+			}
+			context.getScheduler().scheduleOutNeighbors(vertex);
+		}
+	}
+
+	/**
+	 * Sums the counts of all update threads; only called when no update is
+	 * running.
+	 */
+	private int[] sumCounters(boolean reset) {
+		int[] sum = new int[2];
+		synchronized (counters) {
+			for (int[] c : counters) {
+				for (int i = 0; i < sum.length; i++) {
+					sum[i] += c[i];
+					if (reset) {
+						c[i] = 0;
+					}
+				}
+			}
+		}
+		return sum;
+	}
+
+	public void beginIteration(GraphChiContext ctx) {
+		sumCounters(true);
+		intervals = 0;
+		visitedIntervals = 0;
+	}
+
+	public void endIteration(GraphChiContext ctx) {
+		int[] sum = sumCounters(false);
+		logger.info("Iteration " + ctx.getIteration() + ": " + sum[UPDATES]
+				+ " vertex updates, " + sum[PUSHES] + " pushed, "
+				+ (intervals - visitedIntervals) + " of " + intervals
+				+ " intervals skipped");
+	}
+
+	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
+		intervals++;
+		intervalVisited = false;
+	}
+
+	public void endInterval(GraphChiContext ctx, VertexInterval interval) {
+	}
+
+	// Intervals without a scheduled vertex get no sub-interval and no load
+	public void beginSubInterval(GraphChiContext ctx, VertexInterval interval) {
+		if (!intervalVisited) {
+			intervalVisited = true;
+			visitedIntervals++;
+		}
+	}
+
+	public void endSubInterval(GraphChiContext ctx, VertexInterval interval) {
+	}
+
+	/**
+	 * Usage: java demo.PushPagerank graph-name num-shards
+	 * filetype(edgelist|adjlist) [threshold] The shards are the same as for
+	 * {@link Pagerank}. -Dpagerank.iterations caps the iterations (default
+	 * 1000).
+	 */
+	public static void main(String[] args) throws Exception {
+		String baseFilename = args[0];
+		int nShards = Integer.parseInt(args[1]);
+		String fileType = (args.length >= 3 ? args[2] : null);
+		float threshold = (args.length >= 4 ? Float.parseFloat(args[3])
+				: 0.001f);
+
+		CompressedIO.disableCompression();
+
+		/* Create shards */
+		FastSharder sharder = Pagerank.createSharder(baseFilename, nShards);
+		if (baseFilename.equals("pipein")) { // Allow piping graph in
+			sharder.shard(System.in, fileType);
+		} else {
+			ShardCache cache = new ShardCache(baseFilename, nShards, fileType);
+			if (!cache.prepare(new FloatConverter(), 0.0f)) {
+				ParallelSharder.shard(sharder, new File(baseFilename), fileType);
+				cache.sharded(new FloatConverter());
+			}
+		}
+
+		/* Run GraphChi */
+		GraphChiEngine<Float, Float> engine = new GraphChiEngine<Float, Float>(
+				baseFilename, nShards);
+		engine.setEdataConverter(new FloatConverter());
+		engine.setVertexDataConverter(new FloatConverter());
+		engine.setEnableScheduler(true);
+		// Edges within an interval are read and written by both endpoints
+		engine.setEnableDeterministicExecution(true);
+
+		engine.run(new PushPagerank(threshold),
+				Integer.getInteger("pagerank.iterations", 1000));
+
+		logger.info("Ready.");
+
+		/* Output results */
+		int i = 0;
+		VertexIdTranslate trans = engine.getVertexIdTranslate();
+		TreeSet<IdFloat> top20 = Toplist.topListFloat(baseFilename,
+				engine.numVertices(), 20);
+		for (IdFloat vertexRank : top20) {
+			System.out.println(++i + ": "
+					+ trans.backward(vertexRank.getVertexId()) + " = "
+					+ vertexRank.getValue());
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package demo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sum of the absolute value changes of one iteration, added up by all update
+ * threads. Each thread adds to a counter of its own, so updates never
+ * contend; {@link #getAndReset()} collects the counters between iterations.
+ */
+public class Residual {
+
+	private final List<double[]> counters = new ArrayList<double[]>();
+
+	private final ThreadLocal<double[]> counter = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			double[] c = new double[1];
+			synchronized (counters) {
+				counters.add(c);
+			}
+			return c;
+		}
+	};
+
+	public void add(double delta) {
+		counter.get()[0] += delta;
+	}
+
+	/**
+	 * Call only between iterations, when no update is running.
+	 */
+	public double getAndReset() {
+		double sum = 0.0;
+		synchronized (counters) {
+			for (double[] c : counters) {
+				sum += c[0];
+				c[0] = 0.0;
+			}
+		}
+		return sum;
+	}
+
+}
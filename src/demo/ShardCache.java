@@ -0,0 +1,258 @@
+package demo;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.ChiLogger;
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+import edu.cmu.graphchi.io.CompressedIO;
+
+/**
+ * Decides whether the shards of an input graph can be reused, so that one
+ * sharding serves every program run on the graph.
+ * <p>
+ * The structure of the shards (intervals, vertex id translation, adjacency
+ * shards and degrees) does not depend on the program. The edge data does,
+ * and GraphChi names its files by value size only, so e.g. the 8-byte edges of
+ * SCC and of WeightedPagerank share one set of files. A manifest next to the
+ * shards (graph.N.shardcache) records the fingerprint of the input the
+ * structure was built from, the number of edges of each shard, and which
+ * converter the edge data of each value size currently belongs to. Edge data
+ * of another converter is rewritten from the structure with an initial value
+ * instead of sharding again; only programs whose edge values come from the
+ * input (WeightedPagerank) need a new sharding.
+ * <p>
+ * The fingerprint covers the file type, the length and modification time of
+ * the input and a CRC32 of 16 blocks of 64 kB spread over it. Vertex data
+ * files are not managed: the programs initialize their vertex values in the
+ * first iteration.
+ */
+public class ShardCache {
+
+	private static Logger logger = ChiLogger.getLogger("shard-cache");
+
+	private static final int SAMPLES = 16;
+	private static final int SAMPLE_SIZE = 1 << 16;
+
+	private final String baseFilename;
+	private final int nShards;
+	private final String fileType;
+
+	/**
+	 * @param fileType
+	 *            file type the input is sharded with; shards of another type
+	 *            are not reused
+	 */
+	public ShardCache(String baseFilename, int nShards, String fileType) {
+		this.baseFilename = baseFilename;
+		this.nShards = nShards;
+		this.fileType = (fileType == null ? "edgelist" : fileType);
+	}
+
+	private File manifestFile() {
+		return new File(baseFilename + "." + nShards + ".shardcache");
+	}
+
+	/**
+	 * Fingerprint of the input file.
+	 */
+	public String fingerprint() throws IOException {
+		File file = new File(baseFilename);
+		long length = file.length();
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[SAMPLE_SIZE];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long last = Math.max(0, length - SAMPLE_SIZE);
+			for (int i = 0; i < SAMPLES; i++) {
+				raf.seek(last * i / (SAMPLES - 1));
+				int n = raf.read(buf);
+				if (n > 0) {
+					crc.update(buf, 0, n);
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		return fileType + ":" + length + ":" + file.lastModified() + ":"
+				+ Long.toHexString(crc.getValue());
+	}
+
+	private Properties loadManifest() throws IOException {
+		File file = manifestFile();
+		if (!file.exists()) {
+			return null;
+		}
+		Properties manifest = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			manifest.load(in);
+		} finally {
+			in.close();
+		}
+		return manifest;
+	}
+
+	private void saveManifest(Properties manifest) throws IOException {
+		OutputStream out = new FileOutputStream(manifestFile());
+		try {
+			manifest.store(out, "Shards of " + baseFilename);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String layoutKey(BytesToValueConverter<?> converter) {
+		return "edata." + converter.sizeOf();
+	}
+
+	private static String layout(BytesToValueConverter<?> converter) {
+		return converter.getClass().getName();
+	}
+
+	private String edataFilename(BytesToValueConverter<?> converter, int p) {
+		return ChiFilenames.getFilenameShardEdata(baseFilename, converter, p,
+				nShards);
+	}
+
+	/**
+	 * Checks whether shards of the current input exist with edge data of
+	 * this converter. If only the structure matches and an initial value is
+	 * given, the edge data is rewritten with that value.
+	 *
+	 * @param initialValue
+	 *            value of every edge, or null if the edge values must come
+	 *            from the input
+	 * @return false if the input has to be sharded, followed by
+	 *         {@link #sharded(BytesToValueConverter)}
+	 */
+	public <E> boolean prepare(BytesToValueConverter<E> converter,
+			E initialValue) throws IOException {
+		if (!new File(ChiFilenames.getFilenameIntervals(baseFilename, nShards))
+				.exists()) {
+			return false;
+		}
+		Properties manifest = loadManifest();
+		if (manifest == null) {
+			logger.info("No shard cache manifest for " + baseFilename
+					+ " -- sharding again");
+			return false;
+		}
+		if (!fingerprint().equals(manifest.getProperty("fingerprint"))) {
+			logger.info(baseFilename + " changed since it was sharded");
+			// Do not trust the structure if the sharding fails halfway
+			manifestFile().delete();
+			return false;
+		}
+
+		String edata0 = edataFilename(converter, 0);
+		File edataDir = new File(ChiFilenames.getDirnameShardEdataBlock(
+				edata0, ChiFilenames.getBlocksize(converter.sizeOf())));
+		if (layout(converter).equals(manifest.getProperty(layoutKey(converter)))
+				&& edataDir.exists()) {
+			logger.info("Found shards of " + baseFilename
+					+ " -- no need to preprocess");
+			return true;
+		}
+		if (initialValue == null) {
+			logger.info("Edge values of " + layout(converter)
+					+ " come from the input -- sharding again");
+			manifestFile().delete();
+			return false;
+		}
+
+		long startTime = System.currentTimeMillis();
+		byte[] value = new byte[converter.sizeOf()];
+		converter.setValue(value, initialValue);
+		for (int p = 0; p < nShards; p++) {
+			writeEdata(converter, p,
+					Long.parseLong(manifest.getProperty("edges." + p)), value);
+		}
+		manifest.setProperty(layoutKey(converter), layout(converter));
+		saveManifest(manifest);
+		logger.info(String.format(
+				"Edge data of %s for %s written from the shards in %.3fs",
+				baseFilename, layout(converter),
+				(System.currentTimeMillis() - startTime) * 0.001));
+		return true;
+	}
+
+	/**
+	 * Writes edge data in the block layout of FastSharder, every edge
+	 * holding the same value.
+	 */
+	private void writeEdata(BytesToValueConverter<?> converter, int p,
+			long numEdges, byte[] value) throws IOException {
+		int sizeOf = value.length;
+		int blockSize = ChiFilenames.getBlocksize(sizeOf);
+		String edataFilename = edataFilename(converter, p);
+		long edataSize = numEdges * sizeOf;
+		if (edataSize > Integer.MAX_VALUE) {
+			// ChiFilenames.getShardEdataSize() reads an int
+			throw new IOException("Shard " + p + " of " + baseFilename
+					+ " has too much edge data: " + edataSize);
+		}
+
+		OutputStream sizeOut = new FileOutputStream(edataFilename + ".size");
+		try {
+			sizeOut.write(Long.toString(edataSize).getBytes());
+		} finally {
+			sizeOut.close();
+		}
+
+		File dir = new File(ChiFilenames.getDirnameShardEdataBlock(
+				edataFilename, blockSize));
+		if (!dir.exists()) {
+			dir.mkdir();
+		}
+		ByteBuffer block = ByteBuffer.allocate((int) Math.min(blockSize,
+				edataSize));
+		while (block.hasRemaining()) {
+			block.put(value);
+		}
+
+		int blockId = 0;
+		for (long idx = 0; idx < edataSize; idx += blockSize) {
+			File blockFile = new File(ChiFilenames.getFilenameShardEdataBlock(
+					edataFilename, blockId++, blockSize));
+			OutputStream out = new FileOutputStream(blockFile);
+			if (CompressedIO.isCompressionEnabled()) {
+				out = new DeflaterOutputStream(new BufferedOutputStream(out));
+			}
+			try {
+				out.write(block.array(), 0,
+						(int) Math.min(blockSize, edataSize - idx));
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Records new shards of the input, with edge data of this converter.
+	 */
+	public void sharded(BytesToValueConverter<?> converter) throws IOException {
+		Properties manifest = new Properties();
+		manifest.setProperty("fingerprint", fingerprint());
+		for (int p = 0; p < nShards; p++) {
+			long edataSize = ChiFilenames.getShardEdataSize(edataFilename(
+					converter, p));
+			manifest.setProperty("edges." + p,
+					Long.toString(edataSize / converter.sizeOf()));
+		}
+		manifest.setProperty(layoutKey(converter), layout(converter));
+		saveManifest(manifest);
+	}
+}
@@ -0,0 +1,103 @@
+package demo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.cmu.graphchi.ChiFilenames;
+import edu.cmu.graphchi.datablocks.FloatConverter;
+import edu.cmu.graphchi.datablocks.IntConverter;
+import edu.cmu.graphchi.io.CompressedIO;
+
+public class ShardCacheTest {
+	private File dir;
+	private File graph;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = TestFiles.createTempDir("shardcache");
+		graph = new File(dir, "graph");
+		writeGraph("0 1\n1 2\n2 0\n2 3\n3 4\n");
+		CompressedIO.disableCompression();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFiles.delete(dir);
+	}
+
+	private void writeGraph(String edges) throws IOException {
+		Writer out = new FileWriter(graph);
+		out.write(edges);
+		out.close();
+	}
+
+	private ShardCache shard() throws IOException {
+		ShardCache cache = new ShardCache(graph.getPath(), 2, "edgelist");
+		new ParallelSharder(1).run(
+				Pagerank.createSharder(graph.getPath(), 2), graph,
+				"edgelist");
+		cache.sharded(new FloatConverter());
+		return cache;
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		ShardCache cache = new ShardCache(graph.getPath(), 2, "edgelist");
+		assertFalse(cache.prepare(new FloatConverter(), 0.0f));
+
+		shard();
+		assertTrue(cache.prepare(new FloatConverter(), 0.0f));
+		// Same graph sharded as another file type
+		assertFalse(new ShardCache(graph.getPath(), 2, "adjlist").prepare(
+				new FloatConverter(), 0.0f));
+	}
+
+	@Test
+	public void testEdgeDataFromStructure() throws Exception {
+		ShardCache cache = shard();
+		assertTrue(cache.prepare(new IntConverter(), 7));
+
+		// Every edge of both shards holds the initial value
+		long edges = 0;
+		for (int p = 0; p < 2; p++) {
+			String edata = ChiFilenames.getFilenameShardEdata(graph.getPath(),
+					new IntConverter(), p, 2);
+			int size = ChiFilenames.getShardEdataSize(edata);
+			byte[] block = new byte[0];
+			if (size > 0) {
+				block = TestFiles.read(new File(
+						ChiFilenames.getFilenameShardEdataBlock(edata, 0,
+								ChiFilenames.getBlocksize(4))));
+			}
+			assertEquals(size, block.length);
+			for (int i = 0; i < size; i += 4) {
+				assertEquals(7, (int) new IntConverter().getValue(new byte[] {
+						block[i], block[i + 1], block[i + 2], block[i + 3] }));
+			}
+			edges += size / 4;
+		}
+		assertEquals(5, edges);
+
+		// The 4-byte edge data now belongs to IntConverter
+		assertTrue(cache.prepare(new IntConverter(), 7));
+		assertFalse(cache.prepare(new FloatConverter(), null));
+	}
+
+	@Test
+	public void testChangedInput() throws Exception {
+		ShardCache cache = shard();
+		writeGraph("0 1\n1 2\n2 0\n2 3\n3 5\n");
+		graph.setLastModified(graph.lastModified() + 2000);
+		assertFalse(cache.prepare(new FloatConverter(), 0.0f));
+		// Not trusted again until sharded
+		assertFalse(cache.prepare(new FloatConverter(), 0.0f));
+	}
+}
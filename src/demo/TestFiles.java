@@ -0,0 +1,56 @@
+package demo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Temporary directories and file contents for the tests.
+ */
+public class TestFiles {
+
+	private TestFiles() {
+	}
+
+	/**
+	 * Creates an empty directory in the default temporary-file directory.
+	 */
+	public static File createTempDir(String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, "");
+		if (!dir.delete() || !dir.mkdir()) {
+			throw new IOException("Could not create directory " + dir);
+		}
+		return dir;
+	}
+
+	/**
+	 * Deletes a file, or a directory with everything in it.
+	 */
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	public static byte[] read(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int n = 0;
+			while (n < data.length) {
+				int read = in.read(data, n, data.length - n);
+				if (read < 0) {
+					throw new IOException("Unexpected end of " + file);
+				}
+				n += read;
+			}
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+}
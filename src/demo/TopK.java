@@ -0,0 +1,152 @@
+package demo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+
+/**
+ * The k vertices with the largest values, kept in a bounded min-heap of
+ * primitive arrays, so adding a vertex that does not make the list costs one
+ * comparison. Not thread-safe; use one per update thread and merge them with
+ * {@link #addAll(TopK)}.
+ */
+public class TopK {
+
+	private final int k;
+	private final int[] ids;
+	private final float[] values;
+	private int size = 0;
+
+	public TopK(int k) {
+		this.k = k;
+		ids = new int[k];
+		values = new float[k];
+	}
+
+	public void add(int id, float value) {
+		if (size < k) {
+			// sift up
+			int c = size++;
+			while (c > 0 && values[(c - 1) / 2] > value) {
+				ids[c] = ids[(c - 1) / 2];
+				values[c] = values[(c - 1) / 2];
+				c = (c - 1) / 2;
+			}
+			ids[c] = id;
+			values[c] = value;
+		} else if (k > 0 && value > values[0]) {
+			// replace the smallest and sift down
+			int c = 0;
+			while (2 * c + 1 < size) {
+				int child = 2 * c + 1;
+				if (child + 1 < size && values[child + 1] < values[child]) {
+					child++;
+				}
+				if (values[child] >= value) {
+					break;
+				}
+				ids[c] = ids[child];
+				values[c] = values[child];
+				c = child;
+			}
+			ids[c] = id;
+			values[c] = value;
+		}
+	}
+
+	public void addAll(TopK other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.ids[i], other.values[i]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return positions in the heap, largest value first (ties by id)
+	 */
+	private int[] order() {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		// Insertion sort: k is small
+		for (int i = 1; i < size; i++) {
+			int p = order[i];
+			int j = i - 1;
+			while (j >= 0 && before(p, order[j])) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = p;
+		}
+		return order;
+	}
+
+	private boolean before(int a, int b) {
+		return (values[a] > values[b] || (values[a] == values[b]
+				&& ids[a] < ids[b]));
+	}
+
+	/**
+	 * @return vertex ids, largest value first
+	 */
+	public int[] getIds() {
+		int[] order = order();
+		int[] sorted = new int[size];
+		for (int i = 0; i < size; i++) {
+			sorted[i] = ids[order[i]];
+		}
+		return sorted;
+	}
+
+	/**
+	 * @return values, largest first
+	 */
+	public float[] getValues() {
+		int[] order = order();
+		float[] sorted = new float[size];
+		for (int i = 0; i < size; i++) {
+			sorted[i] = values[order[i]];
+		}
+		return sorted;
+	}
+
+	/**
+	 * Writes "rank,vertex,value" lines with the original vertex ids.
+	 */
+	public void writeCsv(Writer out, VertexIdTranslate trans)
+			throws IOException {
+		int[] order = order();
+		out.write("rank,vertex,value\n");
+		for (int i = 0; i < size; i++) {
+			out.write((i + 1) + "," + trans.backward(ids[order[i]]) + ","
+					+ values[order[i]] + "\n");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes (vertex id, value) records as little-endian int and float, with
+	 * the original vertex ids, largest value first.
+	 */
+	public void writeBinary(OutputStream out, VertexIdTranslate trans)
+			throws IOException {
+		int[] order = order();
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+				out));
+		for (int i = 0; i < size; i++) {
+			data.writeInt(Integer.reverseBytes(trans.backward(ids[order[i]])));
+			data.writeInt(Integer.reverseBytes(Float
+					.floatToIntBits(values[order[i]])));
+		}
+		data.flush();
+	}
+
+}
@@ -0,0 +1,75 @@
+package demo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import edu.cmu.graphchi.preprocessing.VertexIdTranslate;
+
+public class TopKTest {
+
+	@Test
+	public void testLargestFirst() {
+		TopK top = new TopK(3);
+		float[] values = { 0.5f, 3.0f, 1.0f, 7.0f, 2.0f, 3.0f, -1.0f };
+		for (int i = 0; i < values.length; i++) {
+			top.add(i, values[i]);
+		}
+
+		assertEquals(3, top.size());
+		assertArrayEquals(new int[] { 3, 1, 5 }, top.getIds());
+		float[] largest = top.getValues();
+		assertEquals(7.0f, largest[0], 0.0f);
+		assertEquals(3.0f, largest[1], 0.0f);
+		assertEquals(3.0f, largest[2], 0.0f);
+	}
+
+	@Test
+	public void testMerge() {
+		TopK a = new TopK(2);
+		TopK b = new TopK(2);
+		for (int i = 0; i < 100; i++) {
+			(i % 2 == 0 ? a : b).add(i, i);
+		}
+		TopK merged = new TopK(2);
+		merged.addAll(a);
+		merged.addAll(b);
+
+		assertArrayEquals(new int[] { 99, 98 }, merged.getIds());
+	}
+
+	@Test
+	public void testEmpty() {
+		TopK top = new TopK(0);
+		top.add(1, 1.0f);
+		assertEquals(0, top.size());
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		TopK top = new TopK(2);
+		top.add(4, 1.5f);
+		top.add(2, 2.5f);
+		VertexIdTranslate trans = VertexIdTranslate.identity();
+
+		StringWriter csv = new StringWriter();
+		top.writeCsv(csv, trans);
+		assertEquals("rank,vertex,value\n1,2,2.5\n2,4,1.5\n", csv.toString());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		top.writeBinary(bytes, trans);
+		ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray()).order(
+				ByteOrder.LITTLE_ENDIAN);
+		assertEquals(16, buf.remaining());
+		assertEquals(2, buf.getInt());
+		assertEquals(2.5f, buf.getFloat(), 0.0f);
+		assertEquals(4, buf.getInt());
+		assertEquals(1.5f, buf.getFloat(), 0.0f);
+	}
+
+}
@@ -0,0 +1,76 @@
+package demo;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Concurrent, lock-free union-find over an int array of parent ids. A root
+ * is always linked under the smaller root, so the root of every set is its
+ * smallest element and no cycle can form when threads link at the same
+ * time. find() halves paths with compare-and-set.
+ */
+public class UnionFind {
+
+	private AtomicIntegerArray parent;
+
+	public UnionFind(int capacity) {
+		parent = new AtomicIntegerArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			parent.set(i, i);
+		}
+	}
+
+	public int capacity() {
+		return parent.length();
+	}
+
+	/**
+	 * Makes room for elements up to capacity - 1, each in a set of its own.
+	 * Must not run concurrently with find() or union().
+	 */
+	public void grow(int capacity) {
+		AtomicIntegerArray old = parent;
+		if (capacity <= old.length()) {
+			return;
+		}
+		parent = new AtomicIntegerArray(capacity);
+		for (int i = 0; i < old.length(); i++) {
+			parent.set(i, old.get(i));
+		}
+		for (int i = old.length(); i < capacity; i++) {
+			parent.set(i, i);
+		}
+	}
+
+	public int find(int x) {
+		int p = parent.get(x);
+		while (p != x) {
+			int grandparent = parent.get(p);
+			if (grandparent != p) {
+				parent.compareAndSet(x, p, grandparent);
+			}
+			x = p;
+			p = grandparent;
+		}
+		return x;
+	}
+
+	public void union(int a, int b) {
+		while (true) {
+			a = find(a);
+			b = find(b);
+			if (a == b) {
+				return;
+			}
+			if (a > b) {
+				int t = a;
+				a = b;
+				b = t;
+			}
+			// Fails if b stopped being a root in the meantime
+			if (parent.compareAndSet(b, b, a)) {
+				return;
+			}
+		}
+	}
+
+}
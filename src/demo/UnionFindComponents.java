@@ -0,0 +1,343 @@
+package demo;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import edu.cmu.graphchi.ChiLogger;
+
+/**
+ * Weakly connected components in a single pass over the edge list, without
+ * sharding. One thread parses the input into batches of edges and the
+ * workers apply them to a {@link UnionFind}. The union-find grows with the
+ * largest vertex id seen, up to a memory budget; past it, the computation
+ * gives up so that the caller can fall back to label propagation on shards.
+ */
+public class UnionFindComponents {
+
+	private static Logger logger = ChiLogger.getLogger("connectedcomponents");
+
+	private static final int BATCH_EDGES = 1 << 16;
+
+	private final int nThreads;
+	private final long memoryBudget;
+	private UnionFind unionFind = new UnionFind(1 << 16);
+	private int numVertices = 0;
+	private long numEdges = 0;
+
+	// Parser and batching state of compute()
+	private boolean adjlist;
+	private ExecutorService pool;
+	private Semaphore inFlight;
+	private boolean fits;
+	private int[] tokens = new int[16];
+	private int numTokens = 0;
+	private int[] batch = new int[2 * BATCH_EDGES];
+	private int batchSize = 0;
+	private int maxId = -1;
+	// First exception of a union worker
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	/**
+	 * @param nThreads
+	 *            number of union threads
+	 * @param memoryBudget
+	 *            bytes the parent array and the component counts may use,
+	 *            8 bytes per vertex
+	 */
+	public UnionFindComponents(int nThreads, long memoryBudget) {
+		this.nThreads = nThreads;
+		this.memoryBudget = memoryBudget;
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public long getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * @return component id (smallest vertex id of the component) of a vertex
+	 */
+	public int getComponent(int vertexId) {
+		return unionFind.find(vertexId);
+	}
+
+	/**
+	 * Reads the graph, in the edgelist or adjlist format of FastSharder or as
+	 * a binary edge list of {@link ParallelSharder}.
+	 *
+	 * @return false if the vertices do not fit in the memory budget
+	 * @throws NumberFormatException
+	 *             if a vertex id is not a non-negative int
+	 */
+	public boolean compute(InputStream in, String fileType) throws IOException,
+			InterruptedException {
+		adjlist = "adjlist".equals(fileType);
+		pool = Executors.newFixedThreadPool(nThreads);
+		inFlight = new Semaphore(2 * nThreads);
+		failure.set(null);
+		fits = true;
+
+		try {
+			if (ParallelSharder.isBinary(fileType)) {
+				readBinary(in, ParallelSharder.recordSize(fileType));
+			} else {
+				readText(in);
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+		checkWorkers();
+		return fits;
+	}
+
+	/**
+	 * Same rules as {@link ParallelSharder}: tokens are separated by spaces
+	 * or tabs, and vertex ids are decimal ints. Lines starting with '#' or
+	 * '%' are comments.
+	 */
+	private void readText(InputStream in) throws IOException,
+			InterruptedException {
+		byte[] buf = new byte[1 << 20];
+		int value = 0;
+		boolean inToken = false, comment = false, lineStart = true;
+
+		int n;
+		while (fits && (n = in.read(buf)) >= 0) {
+			for (int i = 0; i < n; i++) {
+				byte c = buf[i];
+				if (c == '\n' || c == '\r') {
+					if (inToken) {
+						addToken(value);
+						inToken = false;
+					}
+					if (!comment) {
+						endLine();
+					}
+					numTokens = 0;
+					comment = false;
+					lineStart = true;
+				} else if (comment) {
+					continue;
+				} else if (lineStart && (c == '#' || c == '%')) {
+					comment = true;
+				} else if (c == ' ' || c == '\t') {
+					if (inToken) {
+						addToken(value);
+						inToken = false;
+					}
+					lineStart = false;
+				} else if (!adjlist && numTokens >= 2) {
+					// The edge value; only vertex ids are used
+					lineStart = false;
+				} else {
+					int digit = c - '0';
+					if (digit < 0 || digit > 9) {
+						throw new NumberFormatException("Not a vertex id: '"
+								+ (char) c + "' in token " + (numTokens + 1)
+								+ " of a line");
+					}
+					if (!inToken) {
+						value = 0;
+					} else if (value > (Integer.MAX_VALUE - digit) / 10) {
+						throw new NumberFormatException("Vertex id out of "
+								+ "range in token " + (numTokens + 1)
+								+ " of a line");
+					}
+					value = value * 10 + digit;
+					inToken = true;
+					lineStart = false;
+				}
+			}
+		}
+		// Last line without a newline
+		if (inToken) {
+			addToken(value);
+		}
+		if (!comment) {
+			endLine();
+		}
+		if (fits && batchSize > 0) {
+			submit();
+		}
+		numVertices = maxId + 1;
+	}
+
+	/**
+	 * Reads little-endian records; the value of an edge is not needed.
+	 */
+	private void readBinary(InputStream in, int recordSize)
+			throws IOException, InterruptedException {
+		boolean wide = (recordSize >= 16);
+		ByteBuffer buf = ByteBuffer.allocate((1 << 20) / recordSize
+				* recordSize);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+
+		int n;
+		while (fits
+				&& (n = in.read(buf.array(), buf.position(),
+						buf.remaining())) >= 0) {
+			buf.position(buf.position() + n);
+			buf.flip();
+			while (fits && buf.remaining() >= recordSize) {
+				int start = buf.position();
+				numTokens = 0;
+				addToken(ParallelSharder.toId(wide ? buf.getLong() : buf
+						.getInt()));
+				addToken(ParallelSharder.toId(wide ? buf.getLong() : buf
+						.getInt()));
+				buf.position(start + recordSize);
+				endLine();
+			}
+			buf.compact();
+		}
+		if (fits && batchSize > 0) {
+			submit();
+		}
+		numVertices = maxId + 1;
+	}
+
+	private void addToken(int value) {
+		if (numTokens == tokens.length) {
+			int[] grown = new int[2 * tokens.length];
+			System.arraycopy(tokens, 0, grown, 0, tokens.length);
+			tokens = grown;
+		}
+		tokens[numTokens++] = value;
+	}
+
+	/**
+	 * Adds the edges of the parsed line to the batch: "from to [value]" or
+	 * "from count to1 to2 ...".
+	 */
+	private void endLine() throws InterruptedException {
+		if (numTokens < 2 || !fits) {
+			return;
+		}
+		int from = tokens[0];
+		int end = (adjlist ? numTokens : 2);
+		for (int j = (adjlist ? 2 : 1); j < end; j++) {
+			if (batchSize == batch.length) {
+				submit();
+				if (!fits) {
+					return;
+				}
+			}
+			batch[batchSize++] = from;
+			batch[batchSize++] = tokens[j];
+			maxId = Math.max(maxId, Math.max(from, tokens[j]));
+		}
+	}
+
+	/**
+	 * Hands the batch to the workers, first growing the union-find if the
+	 * batch has larger ids. Growing waits until no batch is in flight. Clears
+	 * fits if the union-find would exceed the memory budget.
+	 */
+	private void submit() throws InterruptedException {
+		checkWorkers();
+		if (maxId >= unionFind.capacity()) {
+			// Arrays end a few elements short of Integer.MAX_VALUE
+			if (8L * (maxId + 1L) > memoryBudget
+					|| maxId >= Integer.MAX_VALUE - 8) {
+				logger.info("Vertex " + maxId + " does not fit in "
+						+ (memoryBudget >> 20) + " MB");
+				fits = false;
+				return;
+			}
+			long capacity = Math.min(
+					Math.max(2L * unionFind.capacity(), maxId + 1L),
+					Math.min(memoryBudget / 8, Integer.MAX_VALUE - 8));
+			int permits = 2 * nThreads;
+			inFlight.acquire(permits);
+			try {
+				unionFind.grow((int) capacity);
+			} finally {
+				inFlight.release(permits);
+			}
+		}
+
+		inFlight.acquire();
+		numEdges += batchSize / 2;
+		final UnionFind uf = unionFind;
+		final int[] edges = batch;
+		final int size = batchSize;
+		pool.execute(new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < size; i += 2) {
+						uf.union(edges[i], edges[i + 1]);
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					inFlight.release();
+				}
+			}
+		});
+		batch = new int[2 * BATCH_EDGES];
+		batchSize = 0;
+	}
+
+	/**
+	 * Rethrows the first exception of a union worker, which the pool would
+	 * otherwise only log.
+	 */
+	private void checkWorkers() {
+		Throwable e = failure.get();
+		if (e != null) {
+			throw new RuntimeException("Union failed", e);
+		}
+	}
+
+	/**
+	 * Writes "component,size" lines for the components with more than one
+	 * vertex, like LabelAnalysis.computeLabels().
+	 *
+	 * @return number of components, singletons included
+	 */
+	public int writeComponents(OutputStream out) throws IOException {
+		int[] sizes = new int[numVertices];
+		int numComponents = 0;
+		for (int v = 0; v < numVertices; v++) {
+			int root = unionFind.find(v);
+			if (sizes[root]++ == 0) {
+				numComponents++;
+			}
+		}
+
+		OutputStream bos = new BufferedOutputStream(out);
+		for (int v = 0; v < numVertices; v++) {
+			if (sizes[v] > 1) {
+				bos.write((v + "," + sizes[v] + "\n").getBytes());
+			}
+		}
+		bos.flush();
+		return numComponents;
+	}
+
+	/**
+	 * Writes a "vertex,component" line for every vertex.
+	 */
+	public void writeVertexComponents(OutputStream out) throws IOException {
+		OutputStream bos = new BufferedOutputStream(out);
+		for (int v = 0; v < numVertices; v++) {
+			bos.write((v + "," + unionFind.find(v) + "\n").getBytes());
+		}
+		bos.flush();
+	}
+
+}
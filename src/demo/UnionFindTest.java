@@ -0,0 +1,122 @@
+package demo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class UnionFindTest {
+
+	@Test
+	public void testSmallestRoot() {
+		UnionFind uf = new UnionFind(10);
+		uf.union(7, 3);
+		uf.union(9, 7);
+		uf.union(5, 6);
+
+		assertEquals(3, uf.find(9));
+		assertEquals(3, uf.find(7));
+		assertEquals(5, uf.find(6));
+		assertEquals(4, uf.find(4));
+
+		uf.grow(20);
+		assertEquals(15, uf.find(15));
+		uf.union(15, 6);
+		assertEquals(5, uf.find(15));
+	}
+
+	@Test
+	public void testConcurrentUnions() throws Exception {
+		// Chains 0-2-4-... and 1-3-5-..., built from many threads in
+		// scattered order
+		final int n = 100000;
+		final UnionFind uf = new UnionFind(n);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = offset; i + 2 < n; i += 4) {
+						int v = (int) ((i * 7919L) % (n - 2));
+						uf.union(v + 2, v);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int v = 0; v < n; v++) {
+			assertEquals(v % 2, uf.find(v));
+		}
+	}
+
+	@Test
+	public void testComponents() throws Exception {
+		String graph = "# comment\n" + "1 2 0.5\n" + "2 3\n" + "7 8\n"
+				+ "% comment\n" + "9 9\n" + "8 5";
+		UnionFindComponents components = new UnionFindComponents(2,
+				1L << 20);
+		assertTrue(components.compute(
+				new ByteArrayInputStream(graph.getBytes()), "edgelist"));
+
+		assertEquals(10, components.getNumVertices());
+		assertEquals(5, components.getNumEdges());
+		assertEquals(1, components.getComponent(3));
+		assertEquals(5, components.getComponent(7));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// {0}, {1, 2, 3}, {4}, {5, 7, 8}, {6}, {9}
+		assertEquals(6, components.writeComponents(out));
+		assertEquals("1,3\n5,3\n", out.toString());
+	}
+
+	@Test
+	public void testAdjacencyList() throws Exception {
+		String graph = "0 2 4 5\n" + "3 1 4\n" + "6 0\n";
+		UnionFindComponents components = new UnionFindComponents(1,
+				1L << 20);
+		assertTrue(components.compute(
+				new ByteArrayInputStream(graph.getBytes()), "adjlist"));
+
+		assertEquals(0, components.getComponent(3));
+		assertEquals(6, components.getComponent(6));
+	}
+
+	@Test
+	public void testInvalidIds() throws Exception {
+		String[] graphs = { "1 2\n-5 3\n", "1 2147483648\n", "1 2x\n",
+				"1,2\n" };
+		for (String graph : graphs) {
+			UnionFindComponents components = new UnionFindComponents(1,
+					1L << 20);
+			try {
+				components.compute(new ByteArrayInputStream(graph.getBytes()),
+						"edgelist");
+				fail("Accepted " + graph);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+
+		/*
+		 * Id Integer.MAX_VALUE parses, but the parent array cannot be that
+		 * large, so compute() returns false for the fallback
+		 */
+		UnionFindComponents components = new UnionFindComponents(1,
+				Long.MAX_VALUE);
+		assertFalse(components.compute(new ByteArrayInputStream(
+				"3 2147483647\n".getBytes()), "edgelist"));
+	}
+
+	@Test
+	public void testOverBudget() throws Exception {
+		UnionFindComponents components = new UnionFindComponents(1, 1000);
+		assertFalse(components.compute(
+				new ByteArrayInputStream("1 100000\n".getBytes()), "edgelist"));
+	}
+
+}
@@ -0,0 +1,21 @@
+package demo;
+
+/**
+ * Edge data of {@link WeightedPagerank}: the edge weight and the share of the
+ * source's rank sent along the edge. Mutable, so that the converter can
+ * reuse one object per thread.
+ */
+public class WeightedEdge {
+
+	public float weight;
+	public float rank;
+
+	public WeightedEdge() {
+	}
+
+	public WeightedEdge(float weight, float rank) {
+		this.weight = weight;
+		this.rank = rank;
+	}
+
+}
@@ -0,0 +1,62 @@
+package demo;
+
+import edu.cmu.graphchi.datablocks.BytesToValueConverter;
+
+/**
+ * Stores a {@link WeightedEdge} in 8 bytes, weight first, in the same layout
+ * as FloatPairConverter.
+ */
+public class WeightedEdgeConverter implements
+		BytesToValueConverter<WeightedEdge> {
+
+	private final ThreadLocal<WeightedEdge> holder;
+
+	public WeightedEdgeConverter() {
+		this(false);
+	}
+
+	/**
+	 * @param reuseValues
+	 *            if true, getValue() fills one WeightedEdge per thread instead
+	 *            of allocating a new one. The returned object is only valid
+	 *            until the next getValue() call on the same thread.
+	 */
+	public WeightedEdgeConverter(boolean reuseValues) {
+		holder = (reuseValues ? new ThreadLocal<WeightedEdge>() {
+			@Override
+			protected WeightedEdge initialValue() {
+				return new WeightedEdge();
+			}
+		} : null);
+	}
+
+	public int sizeOf() {
+		return 8;
+	}
+
+	public WeightedEdge getValue(byte[] array) {
+		WeightedEdge val = (holder != null ? holder.get() : new WeightedEdge());
+		val.weight = Float.intBitsToFloat(getInt(array, 0));
+		val.rank = Float.intBitsToFloat(getInt(array, 4));
+		return val;
+	}
+
+	public void setValue(byte[] array, WeightedEdge val) {
+		setInt(array, 0, Float.floatToIntBits(val.weight));
+		setInt(array, 4, Float.floatToIntBits(val.rank));
+	}
+
+	private static int getInt(byte[] array, int offset) {
+		return ((array[offset + 3] & 0xff) << 24)
+				| ((array[offset + 2] & 0xff) << 16)
+				| ((array[offset + 1] & 0xff) << 8) | (array[offset] & 0xff);
+	}
+
+	private static void setInt(byte[] array, int offset, int x) {
+		array[offset] = (byte) x;
+		array[offset + 1] = (byte) (x >>> 8);
+		array[offset + 2] = (byte) (x >>> 16);
+		array[offset + 3] = (byte) (x >>> 24);
+	}
+
+}
@@ -2,8 +2,6 @@ package demo;
 
 import edu.cmu.graphchi.*;
 import edu.cmu.graphchi.datablocks.FloatConverter;
-import edu.cmu.graphchi.datablocks.FloatPair;
-import edu.cmu.graphchi.datablocks.FloatPairConverter;
 import edu.cmu.graphchi.engine.GraphChiEngine;
 import edu.cmu.graphchi.engine.VertexInterval;
 import edu.cmu.graphchi.io.CompressedIO;
@@ -15,7 +13,6 @@ import edu.cmu.graphchi.util.IdFloat;
 import edu.cmu.graphchi.util.Toplist;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.TreeSet;
 import java.util.logging.Logger;
@@ -23,15 +20,66 @@ import java.util.logging.Logger;
 /**
  * Weighted Pagerank. Contributed by Jerry Ye, 2014.
  */
-public class WeightedPagerank implements GraphChiProgram<Float, FloatPair> {
+public class WeightedPagerank implements GraphChiProgram<Float, WeightedEdge> {
 
 	private static Logger logger = ChiLogger.getLogger("weighted_pagerank");
 
-	public void update(ChiVertex<Float, FloatPair> vertex,
+	private final double tolerance;
+	private final float epsilon;
+	private final boolean converge;
+	private final Residual residual = new Residual();
+
+	/**
+	 * Runs for the number of iterations given to the engine.
+	 */
+	public WeightedPagerank() {
+		this(0.0, 0.0f);
+	}
+
+	/**
+	 * Runs until the ranks converge. Needs the engine scheduler.
+	 *
+	 * @param tolerance
+	 *            stop when the sum of the absolute rank changes of an
+	 *            iteration (L1 residual) falls below this; 0 disables the
+	 *            check
+	 * @param epsilon
+	 *            if positive, only the out-neighbors of vertices whose rank
+	 *            changed by more than epsilon are updated again (delta
+	 *            scheduling); otherwise every vertex is updated in every
+	 *            iteration
+	 */
+	public WeightedPagerank(double tolerance, float epsilon) {
+		this.tolerance = tolerance;
+		this.epsilon = epsilon;
+		this.converge = (tolerance > 0 || epsilon > 0);
+	}
+
+	public void update(ChiVertex<Float, WeightedEdge> vertex,
 			GraphChiContext context) {
 		if (context.getIteration() == 0) {
 			/* Initialize on first iteration */
 			vertex.setValue(1.0f);
+			if (converge) {
+				context.getScheduler().addTask(vertex.getId());
+			}
+
+			/*
+			 * Normalize the out-edge weights once, so that later iterations
+			 * only write the rank share. Normalizing again (on a rerun over
+			 * the same shards) changes nothing.
+			 */
+			float edgeWeightSum = 0.f;
+			for (int i = 0; i < vertex.numOutEdges(); i++) {
+				edgeWeightSum += vertex.outEdge(i).getValue().weight;
+			}
+			for (int i = 0; i < vertex.numOutEdges(); i++) {
+				ChiEdge<WeightedEdge> edge = vertex.outEdge(i);
+				WeightedEdge edgeValue = edge.getValue();
+				edgeValue.weight /= edgeWeightSum;
+				edgeValue.rank = vertex.getValue() * edgeValue.weight;
+				edge.setValue(edgeValue);
+			}
 		} else {
 			/*
 			 * On other iterations, set my value to be the weighted average of
@@ -39,27 +87,33 @@ public class WeightedPagerank implements GraphChiProgram<Float, FloatPair> {
 			 */
 			float sum = 0.f;
 			for (int i = 0; i < vertex.numInEdges(); i++) {
-				sum += vertex.inEdge(i).getValue().second;
+				sum += vertex.inEdge(i).getValue().rank;
 			}
-			vertex.setValue(0.15f + 0.85f * sum);
-		}
-
-		/* Accumulate edge weights */
-		float edgeWeightSum = 0.f;
-		for (int i = 0; i < vertex.numOutEdges(); i++) {
-			edgeWeightSum += vertex.outEdge(i).getValue().first;
-		}
+			float value = 0.15f + 0.85f * sum;
+
+			if (converge) {
+				float delta = Math.abs(value - vertex.getValue());
+				residual.add(delta);
+				if (epsilon > 0) {
+					if (delta > epsilon) {
+						context.getScheduler().scheduleOutNeighbors(vertex);
+					}
+				} else {
+					context.getScheduler().addTask(vertex.getId());
+				}
+			}
+			vertex.setValue(value);
 
-		/*
-		 * Write my value (divided by my out-degree) to my out-edges so
-		 * neighbors can read it.
-		 */
-		for (int i = 0; i < vertex.numOutEdges(); i++) {
-			FloatPair curValue = vertex.outEdge(i).getValue();
-			float edgeWeight = vertex.outEdge(i).getValue().first;
-			vertex.outEdge(i).setValue(
-					new FloatPair(curValue.first, vertex.getValue()
-							* edgeWeight / edgeWeightSum));
+			/*
+			 * Write my value, weighted by the normalized edge weight, to my
+			 * out-edges so neighbors can read it.
+			 */
+			for (int i = 0; i < vertex.numOutEdges(); i++) {
+				ChiEdge<WeightedEdge> edge = vertex.outEdge(i);
+				WeightedEdge edgeValue = edge.getValue();
+				edgeValue.rank = value * edgeValue.weight;
+				edge.setValue(edgeValue);
+			}
 		}
 
 	}
@@ -71,6 +125,14 @@ public class WeightedPagerank implements GraphChiProgram<Float, FloatPair> {
 	}
 
 	public void endIteration(GraphChiContext ctx) {
+		if (converge && ctx.getIteration() > 0) {
+			double r = residual.getAndReset();
+			logger.info("Iteration " + ctx.getIteration() + ": residual " + r);
+			if (r < tolerance) {
+				// An empty scheduler ends the run
+				ctx.getScheduler().removeAllTasks();
+			}
+		}
 	}
 
 	public void beginInterval(GraphChiContext ctx, VertexInterval interval) {
@@ -93,24 +155,30 @@ public class WeightedPagerank implements GraphChiProgram<Float, FloatPair> {
 	 * @return
 	 * @throws java.io.IOException
 	 */
-	protected static FastSharder createSharder(String graphName, int numShards)
+	public static FastSharder createSharder(String graphName, int numShards)
 			throws IOException {
-		return new FastSharder<Float, FloatPair>(graphName, numShards,
+		return new FastSharder<Float, WeightedEdge>(graphName, numShards,
 				new VertexProcessor<Float>() {
 					public Float receiveVertexValue(int vertexId, String token) {
 						return (token == null ? 0.f : Float.parseFloat(token));
 					}
-				}, new EdgeProcessor<FloatPair>() {
-					public FloatPair receiveEdge(int from, int to, String token) {
-						return new FloatPair(Float.parseFloat(token), 0.f);
+				}, new EdgeProcessor<WeightedEdge>() {
+					public WeightedEdge receiveEdge(int from, int to,
+							String token) {
+						return new WeightedEdge(Float.parseFloat(token), 0.f);
 					}
-				}, new FloatConverter(), new FloatPairConverter());
+				}, new FloatConverter(), new WeightedEdgeConverter());
 	}
 
 	/**
 	 * Usage: java edu.cmu.graphchi.demo.PageRank graph-name num-shards
 	 * filetype(edgelist|adjlist) For specifying the number of shards, 20-50
 	 * million edges/shard is often a good configuration.
+	 *
+	 * With -Dpagerank.tolerance=t the run stops once the L1 residual of an
+	 * iteration is below t, and with -Dpagerank.epsilon=e only vertices next
+	 * to a change larger than e are updated; -Dpagerank.iterations caps the
+	 * iterations (default 100).
 	 */
 	public static void main(String[] args) throws Exception {
 		String baseFilename = args[0];
@@ -124,23 +192,33 @@ public class WeightedPagerank implements GraphChiProgram<Float, FloatPair> {
 		if (baseFilename.equals("pipein")) { // Allow piping graph in
 			sharder.shard(System.in, fileType);
 		} else {
-			if (!new File(ChiFilenames.getFilenameIntervals(baseFilename,
-					nShards)).exists()) {
-				sharder.shard(new FileInputStream(new File(baseFilename)),
-						fileType);
-			} else {
-				logger.info("Found shards -- no need to preprocess");
+			// The weights come from the input
+			ShardCache cache = new ShardCache(baseFilename, nShards, fileType);
+			if (!cache.prepare(new WeightedEdgeConverter(), null)) {
+				ParallelSharder.shard(sharder, new File(baseFilename), fileType);
+				cache.sharded(new WeightedEdgeConverter());
 			}
 		}
 
 		/* Run GraphChi */
-		GraphChiEngine<Float, FloatPair> engine = new GraphChiEngine<Float, FloatPair>(
+		GraphChiEngine<Float, WeightedEdge> engine = new GraphChiEngine<Float, WeightedEdge>(
 				baseFilename, nShards);
-		engine.setEdataConverter(new FloatPairConverter());
+		// update() never holds two edge values at once
+		engine.setEdataConverter(new WeightedEdgeConverter(true));
 		engine.setVertexDataConverter(new FloatConverter());
 		engine.setModifiesInedges(false); // Important optimization
 
-		engine.run(new WeightedPagerank(), 4);
+		double tolerance = Double.parseDouble(System.getProperty(
+				"pagerank.tolerance", "0"));
+		float epsilon = Float.parseFloat(System.getProperty(
+				"pagerank.epsilon", "0"));
+		if (tolerance > 0 || epsilon > 0) {
+			engine.setEnableScheduler(true);
+			engine.run(new WeightedPagerank(tolerance, epsilon),
+					Integer.getInteger("pagerank.iterations", 100));
+		} else {
+			engine.run(new WeightedPagerank(), 4);
+		}
 
 		logger.info("Ready.");
 